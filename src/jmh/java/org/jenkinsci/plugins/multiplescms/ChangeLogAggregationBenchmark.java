@@ -0,0 +1,91 @@
+package org.jenkinsci.plugins.multiplescms;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time of the changelog work {@code MultiSCM.checkout} does once all
+ * children have been checked out, with changelogs compressed on the executor:
+ * gzipping each child's changelog and writing the manifest naming them.
+ *
+ * Compression replaces the sub-logs, so every invocation needs fresh ones.
+ * Each measurement is therefore a single invocation, after the sub-logs were
+ * copied back outside the measured time. The copies are as fresh in the
+ * page cache as sub-logs a checkout has just written. For the smallest
+ * sizes the numbers are dominated by opening and creating files, and vary
+ * more between iterations than a throughput benchmark's would.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+public class ChangeLogAggregationBenchmark {
+
+    @Param({"1", "10", "50"})
+    public int scmCount;
+
+    /** Size of all child changelogs together. */
+    @Param({"16", "16384", "262144"})
+    public long totalKb;
+
+    private SyntheticChangeLogs logs;
+    private File target;
+    private File[] originals;
+
+    @Setup
+    public void setUp() throws IOException {
+        logs = new SyntheticChangeLogs(scmCount, totalKb * 1024);
+        target = new File(logs.dir, "changelog-bench.xml");
+        File originalsDir = new File(logs.dir, "originals");
+        originalsDir.mkdir();
+        originals = new File[logs.subLogs.length];
+        for (int i = 0; i < logs.subLogs.length; i++) {
+            originals[i] = new File(originalsDir, logs.subLogs[i].getName());
+            Files.copy(logs.subLogs[i].toPath(), originals[i].toPath());
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void restoreSubLogs() throws IOException {
+        for (int i = 0; i < logs.subLogs.length; i++) {
+            Files.deleteIfExists(MultiSCMChangeLogWriter.compressedFile(logs.subLogs[i]).toPath());
+            Files.copy(originals[i].toPath(), logs.subLogs[i].toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        logs.delete();
+    }
+
+    @Benchmark
+    public File aggregate() throws IOException {
+        MultiSCMChangeLogWriter writer = new MultiSCMChangeLogWriter(target);
+        try {
+            for (int i = 0; i < logs.subLogs.length; i++) {
+                File stored = MultiSCMChangeLogWriter.compress(logs.subLogs[i]);
+                writer.addSubLog(SyntheticChangeLogs.key(i), stored, !stored.equals(logs.subLogs[i]));
+            }
+        } finally {
+            writer.close();
+        }
+        return target;
+    }
+}
@@ -0,0 +1,76 @@
+package org.jenkinsci.plugins.multiplescms;
+
+import hudson.scm.ChangeLogSet;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.xml.sax.SAXException;
+
+/**
+ * Latency of loading a build's changes, for both on-disk layouts: just the
+ * {@code parse} call (which only indexes), and parse plus loading every SCM's
+ * changes as the changes page does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ChangeLogParsingBenchmark {
+
+    @Param({"1", "10", "50"})
+    public int scmCount;
+
+    /** Size of all child changelogs together. */
+    @Param({"16", "16384", "262144"})
+    public long totalKb;
+
+    @Param({"manifest", "legacy"})
+    public String layout;
+
+    private SyntheticChangeLogs logs;
+    private File changelogFile;
+
+    @Setup
+    public void setUp() throws IOException {
+        logs = new SyntheticChangeLogs(scmCount, totalKb * 1024);
+        changelogFile = layout.equals("manifest") ? logs.manifest : logs.legacy;
+    }
+
+    @TearDown
+    public void tearDown() {
+        logs.delete();
+    }
+
+    @Benchmark
+    public ChangeLogSet<? extends ChangeLogSet.Entry> parse() throws IOException, SAXException {
+        return logs.parser.parse(null, changelogFile);
+    }
+
+    @Benchmark
+    public void parseAndLoadAll(Blackhole bh) throws IOException, SAXException {
+        MultiSCMChangeLogSet changes = (MultiSCMChangeLogSet) logs.parser.parse(null, changelogFile);
+        for (MultiSCMChangeLogSet.ChangeLogSetWrapper wrapper : changes.getChangeLogSetWrappers()) {
+            bh.consume(wrapper.getLogs());
+        }
+    }
+
+    @Benchmark
+    public ChangeLogSet.Entry parseAndLoadFirst() throws IOException, SAXException {
+        return logs.parser.parse(null, changelogFile).iterator().next();
+    }
+}
@@ -0,0 +1,198 @@
+package org.jenkinsci.plugins.multiplescms;
+
+import hudson.model.Run;
+import hudson.model.User;
+import hudson.scm.ChangeLogParser;
+import hudson.scm.ChangeLogSet;
+import hudson.scm.RepositoryBrowser;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Generated changelogs of a given size for the benchmarks, in either of the
+ * two on-disk layouts, plus a child parser that reads every byte of its
+ * sub-log without keeping any of it.
+ */
+final class SyntheticChangeLogs {
+    /** An entry with the characters that have to be escaped in the old format. */
+    private static final String ENTRY = "<entry><msg>Fix &amp; \"tidy\" up <stuff></msg><rev>%08d</rev></entry>\n";
+
+    final File dir;
+    final File manifest;
+    final File legacy;
+    final File[] subLogs;
+    final MultiSCMChangeLogParser parser;
+
+    SyntheticChangeLogs(int scmCount, long totalBytes) throws IOException {
+        dir = Files.createTempDirectory("multiscm-jmh").toFile();
+        manifest = new File(dir, "changelog.xml");
+        legacy = new File(dir, "changelog-legacy.xml");
+        subLogs = new File[scmCount];
+
+        long perScm = Math.max(1, totalBytes / scmCount);
+        for (int i = 0; i < scmCount; i++) {
+            subLogs[i] = MultiSCMChangeLogWriter.subLogFile(manifest, i);
+            writeSubLog(subLogs[i], perScm);
+        }
+
+        MultiSCMChangeLogWriter writer = new MultiSCMChangeLogWriter(manifest);
+        try {
+            for (int i = 0; i < scmCount; i++) {
+                writer.addSubLog(key(i), subLogs[i]);
+            }
+        } finally {
+            writer.close();
+        }
+        writeLegacy();
+
+        Map<String, ChangeLogParser> parsers = new LinkedHashMap<String, ChangeLogParser>();
+        Map<String, String> names = new LinkedHashMap<String, String>();
+        for (int i = 0; i < scmCount; i++) {
+            parsers.put(key(i), new DrainingParser());
+            names.put(key(i), "Stub (" + key(i) + ")");
+        }
+        parser = new MultiSCMChangeLogParser(parsers, names);
+    }
+
+    static String key(int i) {
+        return "stub-" + i;
+    }
+
+    void delete() {
+        FileUtils.deleteQuietly(dir);
+    }
+
+    private static void writeSubLog(File file, long bytes) throws IOException {
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+        try {
+            out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<log>\n");
+            long written = 0;
+            for (int rev = 0; written < bytes; rev++) {
+                String entry = String.format(ENTRY, rev);
+                out.write(entry);
+                written += entry.length();
+            }
+            out.write("</log>\n");
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * The single escaped file written by versions up to 0.8.
+     */
+    private void writeLegacy() throws IOException {
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(legacy), StandardCharsets.UTF_8));
+        try {
+            out.write("<" + MultiSCMChangeLogParser.ROOT_XML_TAG + ">\n");
+            char[] chunk = new char[MultiSCMChangeLogWriter.BUFFER_SIZE];
+            for (int i = 0; i < subLogs.length; i++) {
+                out.write("<" + MultiSCMChangeLogParser.SUB_LOG_TAG + " scm=\"" + key(i) + "\">\n<![CDATA[");
+                Reader in = new InputStreamReader(new FileInputStream(subLogs[i]), StandardCharsets.UTF_8);
+                try {
+                    int n;
+                    while ((n = in.read(chunk)) != -1) {
+                        for (int c = 0; c < n; c++) {
+                            switch (chunk[c]) {
+                                case '&': out.write("&amp;"); break;
+                                case '<': out.write("&lt;"); break;
+                                case '>': out.write("&gt;"); break;
+                                case '"': out.write("&quot;"); break;
+                                default: out.write(chunk[c]);
+                            }
+                        }
+                    }
+                } finally {
+                    in.close();
+                }
+                out.write("]]>\n</" + MultiSCMChangeLogParser.SUB_LOG_TAG + ">\n");
+            }
+            out.write("</" + MultiSCMChangeLogParser.ROOT_XML_TAG + ">\n");
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Stands in for a real SCM's parser: reads the whole sub-log, so I/O is
+     * accounted for, and yields a single entry carrying the byte count.
+     */
+    static final class DrainingParser extends ChangeLogParser {
+        @Override
+        public ChangeLogSet<? extends ChangeLogSet.Entry> parse(Run build, RepositoryBrowser<?> browser,
+                File changelogFile) throws IOException {
+            byte[] buffer = new byte[MultiSCMChangeLogWriter.BUFFER_SIZE];
+            long total = 0;
+            InputStream in = new FileInputStream(changelogFile);
+            try {
+                int n;
+                while ((n = in.read(buffer)) != -1) {
+                    total += n;
+                }
+            } finally {
+                in.close();
+            }
+            return new SizeChangeLogSet(build, browser, total);
+        }
+    }
+
+    static final class SizeChangeLogSet extends ChangeLogSet<SizeEntry> {
+        private final SizeEntry entry;
+
+        SizeChangeLogSet(Run<?, ?> build, RepositoryBrowser<?> browser, long size) {
+            super(build, browser);
+            entry = new SizeEntry(this, size);
+        }
+
+        @Override
+        public boolean isEmptySet() {
+            return false;
+        }
+
+        public Iterator<SizeEntry> iterator() {
+            return Collections.singletonList(entry).iterator();
+        }
+    }
+
+    static final class SizeEntry extends ChangeLogSet.Entry {
+        final long size;
+
+        SizeEntry(SizeChangeLogSet parent, long size) {
+            this.size = size;
+            setParent(parent);
+        }
+
+        @Override
+        public String getMsg() {
+            return size + " bytes";
+        }
+
+        @Override
+        public User getAuthor() {
+            return User.getUnknown();
+        }
+
+        @Override
+        public Collection<String> getAffectedPaths() {
+            return Collections.emptyList();
+        }
+    }
+}
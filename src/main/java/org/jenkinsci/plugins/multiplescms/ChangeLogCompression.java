@@ -0,0 +1,85 @@
+package org.jenkinsci.plugins.multiplescms;
+
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Gzips child changelogs off the executor, so that a build's steps do not
+ * wait for it.
+ *
+ * The manifest already names the compressed file when the build moves on.
+ * Until the compression is done, readers of a changelog wait for it here.
+ * A changelog whose compression never finished, e.g. because Jenkins was
+ * restarted, is still there uncompressed and is read as it is.
+ */
+final class ChangeLogCompression {
+    private static final Logger LOGGER = Logger.getLogger(ChangeLogCompression.class.getName());
+
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(
+            new NamingThreadFactory(new DaemonThreadFactory(), "MultiSCM changelog compression"));
+
+    /**
+     * Compressions not done yet, by the absolute path of the uncompressed changelog.
+     */
+    private static final ConcurrentMap<File, FutureTask<Void>> PENDING = new ConcurrentHashMap<File, FutureTask<Void>>();
+
+    private ChangeLogCompression() {
+    }
+
+    /**
+     * Queues {@code subLog} to be compressed by {@link MultiSCMChangeLogWriter#compress(File)}.
+     */
+    static void submit(File subLog) {
+        final File file = subLog.getAbsoluteFile();
+        FutureTask<Void> task = new FutureTask<Void>(new Callable<Void>() {
+            public Void call() {
+                try {
+                    MultiSCMChangeLogWriter.compress(file);
+                } catch (IOException e) {
+                    // e.g. the build was deleted meanwhile; otherwise it stays readable uncompressed
+                    LOGGER.log(Level.FINE, "Failed to compress " + file, e);
+                }
+                return null;
+            }
+        }) {
+            @Override
+            protected void done() {
+                PENDING.remove(file, this);
+            }
+        };
+        PENDING.put(file, task);
+        EXECUTOR.execute(task);
+    }
+
+    /**
+     * Waits until {@code subLog} is compressed, if that is still to be done.
+     */
+    static void await(File subLog) throws IOException {
+        FutureTask<Void> task = PENDING.get(subLog.getAbsoluteFile());
+        if (task == null) {
+            return;
+        }
+        try {
+            task.get();
+        } catch (ExecutionException e) {
+            // whatever is left of the changelog is read as it is
+            LOGGER.log(Level.FINE, "Failed to compress " + subLog, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for " + subLog + " to be compressed");
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package org.jenkinsci.plugins.multiplescms;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Byte offsets of the sub-logs inside an aggregated changelog, the format
+ * written by versions of this plugin up to 0.8:
+ * <pre>
+ * &lt;sub-log scm="key"&gt;
+ * &lt;![CDATA[escaped child changelog]]&gt;
+ * &lt;/sub-log&gt;
+ * </pre>
+ * Because the CDATA content is escaped it never contains {@code ]]>}, so the
+ * file can be indexed with a plain byte scan instead of an XML parser.
+ */
+final class ChangeLogIndex {
+
+    /**
+     * Where one child's escaped changelog lives in the aggregated file.
+     */
+    static final class Range {
+        final String scmKey;
+        final long offset;
+        final long length;
+
+        Range(String scmKey, long offset, long length) {
+            this.scmKey = scmKey;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private static final byte[] SUB_LOG_START = ("<" + MultiSCMChangeLogParser.SUB_LOG_TAG).getBytes(StandardCharsets.UTF_8);
+    private static final byte[] SCM_ATTRIBUTE = "scm=\"".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] CDATA_START = "<![CDATA[".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] CDATA_END = "]]>".getBytes(StandardCharsets.UTF_8);
+
+    private final List<Range> ranges;
+
+    private ChangeLogIndex(List<Range> ranges) {
+        this.ranges = Collections.unmodifiableList(ranges);
+    }
+
+    List<Range> getRanges() {
+        return ranges;
+    }
+
+    /**
+     * @return the index, or null if the file is not laid out as expected
+     *         (and therefore has to go through the XML parser)
+     */
+    static ChangeLogIndex read(File changelogFile) throws IOException {
+        Scanner in = new Scanner(new BufferedInputStream(new FileInputStream(changelogFile), MultiSCMChangeLogWriter.BUFFER_SIZE));
+        try {
+            List<Range> ranges = new ArrayList<Range>();
+            while (in.skipPast(SUB_LOG_START)) {
+                int c = in.read();
+                if (!Character.isWhitespace(c)) {
+                    return null;
+                }
+                if (!in.skipPast(SCM_ATTRIBUTE)) {
+                    return null;
+                }
+                String key = in.readUntil('"');
+                if (key == null || in.skipWhitespace() != '>') {
+                    return null;
+                }
+                if (in.skipWhitespace() != '<' || !in.expect(CDATA_START, 1)) {
+                    return null;
+                }
+                long start = in.position;
+                if (!in.skipPast(CDATA_END)) {
+                    return null;
+                }
+                ranges.add(new Range(unescape(key), start, in.position - CDATA_END.length - start));
+            }
+            return new ChangeLogIndex(ranges);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static String unescape(String text) throws IOException {
+        StringWriter out = new StringWriter(text.length());
+        XmlUnescapingWriter unescaper = new XmlUnescapingWriter(out);
+        unescaper.write(text);
+        unescaper.close();
+        return out.toString();
+    }
+
+    /**
+     * Byte stream that keeps track of its position.
+     */
+    private static final class Scanner {
+        private final InputStream in;
+        long position;
+
+        Scanner(InputStream in) {
+            this.in = in;
+        }
+
+        int read() throws IOException {
+            int c = in.read();
+            if (c != -1) {
+                position++;
+            }
+            return c;
+        }
+
+        /**
+         * Consumes input up to and including the next occurrence of {@code pattern}.
+         */
+        boolean skipPast(byte[] pattern) throws IOException {
+            // Knuth-Morris-Pratt, so that e.g. "]]]>" is still found to end in "]]>"
+            int[] fallback = new int[pattern.length];
+            for (int i = 1, k = 0; i < pattern.length; i++) {
+                while (k > 0 && pattern[i] != pattern[k]) {
+                    k = fallback[k - 1];
+                }
+                if (pattern[i] == pattern[k]) {
+                    k++;
+                }
+                fallback[i] = k;
+            }
+            int matched = 0;
+            int c;
+            while ((c = read()) != -1) {
+                while (matched > 0 && c != (pattern[matched] & 0xff)) {
+                    matched = fallback[matched - 1];
+                }
+                if (c == (pattern[matched] & 0xff) && ++matched == pattern.length) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @return whether the next bytes are {@code pattern}, starting at index {@code from}
+         */
+        boolean expect(byte[] pattern, int from) throws IOException {
+            for (int i = from; i < pattern.length; i++) {
+                if (read() != (pattern[i] & 0xff)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return the first non-whitespace byte
+         */
+        int skipWhitespace() throws IOException {
+            int c;
+            do {
+                c = read();
+            } while (c != -1 && Character.isWhitespace(c));
+            return c;
+        }
+
+        String readUntil(char end) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            int c;
+            while ((c = read()) != end) {
+                if (c == -1) {
+                    return null;
+                }
+                bytes.write(c);
+            }
+            return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+        }
+
+        void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package org.jenkinsci.plugins.multiplescms;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * The child changelogs listed in a manifest written by {@link MultiSCMChangeLogWriter}.
+ */
+final class ChangeLogManifest {
+
+    /**
+     * One child's changelog file.
+     */
+    static final class SubLog {
+        final String scmKey;
+        final File file;
+        /** Whether the file is gzipped. */
+        final boolean compressed;
+
+        SubLog(String scmKey, File file, boolean compressed) {
+            this.scmKey = scmKey;
+            this.file = file;
+            this.compressed = compressed;
+        }
+    }
+
+    /** Enough to get past an XML declaration to the root element. */
+    private static final int SNIFF_LENGTH = 256;
+
+    private final List<SubLog> subLogs;
+
+    private ChangeLogManifest(List<SubLog> subLogs) {
+        this.subLogs = Collections.unmodifiableList(subLogs);
+    }
+
+    List<SubLog> getSubLogs() {
+        return subLogs;
+    }
+
+    /**
+     * @return the manifest, or null if {@code changelogFile} is not one
+     *         (i.e. it is an aggregated changelog of an older build)
+     */
+    static ChangeLogManifest read(final File changelogFile) throws IOException, SAXException {
+        if (!isManifest(changelogFile)) {
+            return null;
+        }
+        final File dir = changelogFile.getAbsoluteFile().getParentFile();
+        final List<SubLog> subLogs = new ArrayList<SubLog>();
+        MultiSCMChangeLogParser.newSAXParser().parse(changelogFile, new DefaultHandler() {
+            @Override
+            public void startElement(String uri, String localName, String qName, Attributes attrs)
+                    throws SAXException {
+                if (qName.equals(MultiSCMChangeLogParser.SUB_LOG_TAG)) {
+                    String key = attrs.getValue("scm");
+                    String name = attrs.getValue("file");
+                    // only ever a sibling of the manifest
+                    if (key == null || name == null || name.indexOf('/') >= 0 || name.indexOf('\\') >= 0
+                            || name.equals("..")) {
+                        throw new SAXException("Invalid sub-log entry in " + changelogFile);
+                    }
+                    String compression = attrs.getValue("compression");
+                    if (compression != null && !compression.equals(MultiSCMChangeLogWriter.GZIP)) {
+                        throw new SAXException("Unknown compression " + compression + " in " + changelogFile);
+                    }
+                    subLogs.add(new SubLog(key, new File(dir, name), compression != null));
+                }
+            }
+        });
+        return new ChangeLogManifest(subLogs);
+    }
+
+    private static boolean isManifest(File changelogFile) throws IOException {
+        byte[] head = new byte[SNIFF_LENGTH];
+        int length = 0;
+        InputStream in = new FileInputStream(changelogFile);
+        try {
+            int n;
+            while (length < head.length && (n = in.read(head, length, head.length - length)) != -1) {
+                length += n;
+            }
+        } finally {
+            in.close();
+        }
+        return new String(head, 0, length, StandardCharsets.UTF_8)
+                .contains("<" + MultiSCMChangeLogParser.MANIFEST_XML_TAG);
+    }
+}
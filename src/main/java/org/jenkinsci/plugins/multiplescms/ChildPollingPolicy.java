@@ -0,0 +1,96 @@
+package org.jenkinsci.plugins.multiplescms;
+
+import hudson.Extension;
+import hudson.model.AbstractDescribableImpl;
+import hudson.model.AbstractProject;
+import hudson.model.Descriptor;
+import hudson.model.Item;
+import hudson.model.Job;
+import hudson.scm.SCM;
+import hudson.util.ComboBoxModel;
+
+import java.util.concurrent.TimeUnit;
+
+import org.kohsuke.stapler.AncestorInPath;
+import org.kohsuke.stapler.DataBoundConstructor;
+
+/**
+ * How often one child SCM of a {@link MultiSCM} is polled, for repositories
+ * that change far less often than the others. A child without a policy is
+ * polled on every cycle.
+ *
+ * A child that is not due keeps its baseline, so whatever changed in the
+ * meantime is still found by the next poll that does ask its remote.
+ */
+public class ChildPollingPolicy extends AbstractDescribableImpl<ChildPollingPolicy> {
+    private final String scmKey;
+    private final boolean never;
+    private final int everyNthCycle;
+    private final int minimumInterval;
+
+    /**
+     * @param scmKey {@link SCM#getKey()} of the child this applies to
+     * @param never do not poll the child at all
+     * @param everyNthCycle poll the child on every this many polling cycles only
+     * @param minimumInterval minutes that have to pass between two polls of the child
+     */
+    @DataBoundConstructor
+    public ChildPollingPolicy(String scmKey, boolean never, int everyNthCycle, int minimumInterval) {
+        this.scmKey = scmKey;
+        this.never = never;
+        this.everyNthCycle = Math.max(1, everyNthCycle);
+        this.minimumInterval = Math.max(0, minimumInterval);
+    }
+
+    public String getScmKey() {
+        return scmKey;
+    }
+
+    public boolean isNever() {
+        return never;
+    }
+
+    public int getEveryNthCycle() {
+        return everyNthCycle;
+    }
+
+    public int getMinimumInterval() {
+        return minimumInterval;
+    }
+
+    /**
+     * @param cycles polling cycles since the child was last polled, including the current one
+     * @param sinceLastPoll milliseconds since the child was last polled
+     */
+    boolean isDue(int cycles, long sinceLastPoll) {
+        if (never) {
+            return false;
+        }
+        return cycles >= everyNthCycle && sinceLastPoll >= TimeUnit.MINUTES.toMillis(minimumInterval);
+    }
+
+    @Extension
+    public static class DescriptorImpl extends Descriptor<ChildPollingPolicy> {
+        @Override
+        public String getDisplayName() {
+            return "Polling policy";
+        }
+
+        /**
+         * Suggests the keys of the children the job currently has, to those who may configure it.
+         */
+        public ComboBoxModel doFillScmKeyItems(@AncestorInPath Job<?, ?> job) {
+            ComboBoxModel keys = new ComboBoxModel();
+            if (job == null || !job.hasPermission(Item.CONFIGURE)) {
+                return keys;
+            }
+            SCM scm = job instanceof AbstractProject ? ((AbstractProject<?, ?>) job).getScm() : null;
+            if (scm instanceof MultiSCM) {
+                for (SCM child : ((MultiSCM) scm).getConfiguredSCMs()) {
+                    keys.add(child.getKey());
+                }
+            }
+            return keys;
+        }
+    }
+}
@@ -0,0 +1,332 @@
+package org.jenkinsci.plugins.multiplescms;
+
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Predicate;
+
+import jenkins.model.Jenkins;
+import jenkins.security.ImpersonatingExecutorService;
+import org.springframework.security.core.Authentication;
+
+/**
+ * Runs one task per child SCM and hands the outcomes back in submission
+ * order, so callers can merge them exactly as the sequential loop would have.
+ *
+ * All runners share one pool, so the threads they use together stay bounded
+ * even when tasks time out and their threads do not respond to interrupts.
+ * Each {@link #invokeAll} call only hands the pool as many tasks at a time
+ * as its own thread limit allows.
+ */
+final class ChildTaskRunner {
+    static final int DEFAULT_MAX_THREADS = 32;
+
+    private static int maxThreads = DEFAULT_MAX_THREADS;
+    private static ThreadPoolExecutor pool;
+    private static ExecutorService executor;
+
+    private final String name;
+    private final int threads;
+    private final long timeoutMillis;
+
+    /**
+     * @param name thread name prefix, shows up in thread dumps
+     * @param threads maximum number of tasks running at once
+     * @param timeoutMillis how long a single task may run once started, 0 for no limit
+     */
+    ChildTaskRunner(String name, int threads, long timeoutMillis) {
+        this.name = name;
+        this.threads = Math.max(1, threads);
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Caps the threads all runners use together.
+     */
+    static synchronized void setMaxThreads(int threads) {
+        maxThreads = Math.max(1, threads);
+        if (pool != null) {
+            // the core size may never exceed the maximum, not even in between
+            if (maxThreads > pool.getMaximumPoolSize()) {
+                pool.setMaximumPoolSize(maxThreads);
+                pool.setCorePoolSize(maxThreads);
+            } else {
+                pool.setCorePoolSize(maxThreads);
+                pool.setMaximumPoolSize(maxThreads);
+            }
+        }
+    }
+
+    /**
+     * @return how many threads the shared pool currently has, idle ones included
+     */
+    static synchronized int getPoolSize() {
+        return pool != null ? pool.getPoolSize() : 0;
+    }
+
+    private static synchronized ExecutorService executor() {
+        if (executor == null) {
+            pool = new ThreadPoolExecutor(maxThreads, maxThreads, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(),
+                    new NamingThreadFactory(new DaemonThreadFactory(), "MultiSCM child task"));
+            pool.allowCoreThreadTimeOut(true);
+            // tasks run as whoever handed them in, see Tracked
+            executor = new ImpersonatingExecutorService(pool, ACL.SYSTEM2);
+        }
+        return executor;
+    }
+
+    /**
+     * Result of one task. Exactly one of {@link #getValue()}, {@link #getFailure()},
+     * {@link #isTimedOut()} or {@link #isSkipped()} is meaningful.
+     */
+    static final class Outcome<T> {
+        private final T value;
+        private final Throwable failure;
+        private final boolean timedOut;
+        private final boolean skipped;
+
+        private Outcome(T value, Throwable failure, boolean timedOut) {
+            this(value, failure, timedOut, false);
+        }
+
+        private Outcome(T value, Throwable failure, boolean timedOut, boolean skipped) {
+            this.value = value;
+            this.failure = failure;
+            this.timedOut = timedOut;
+            this.skipped = skipped;
+        }
+
+        T getValue() {
+            return value;
+        }
+
+        Throwable getFailure() {
+            return failure;
+        }
+
+        boolean isTimedOut() {
+            return timedOut;
+        }
+
+        /**
+         * @return true if the task was cancelled or never ran because another
+         *         task met the stop condition
+         */
+        boolean isSkipped() {
+            return skipped;
+        }
+
+        boolean isSuccess() {
+            return failure == null && !timedOut && !skipped;
+        }
+    }
+
+    /**
+     * Remembers when the pool actually picked the task up, so the timeout
+     * does not count time spent waiting in the queue.
+     */
+    private static final class Tracked<T> implements Callable<T> {
+        private final Callable<T> task;
+        private final Batch<T> batch;
+        private final int index;
+        private volatile long startedAt = -1;
+
+        Tracked(Callable<T> task, Batch<T> batch, int index) {
+            this.task = task;
+            this.batch = batch;
+            this.index = index;
+        }
+
+        public T call() throws Exception {
+            if (batch.stopped) {
+                throw new CancellationException();
+            }
+            startedAt = System.currentTimeMillis();
+            batch.progressAt = startedAt;
+            Thread thread = Thread.currentThread();
+            String threadName = thread.getName();
+            thread.setName(threadName + ": " + batch.name);
+            ACLContext context = ACL.as2(batch.authentication);
+            try {
+                T result = task.call();
+                if (batch.stopWhen != null && batch.stopWhen.test(result)) {
+                    batch.stop(index);
+                }
+                return result;
+            } finally {
+                context.close();
+                thread.setName(threadName);
+            }
+        }
+    }
+
+    /**
+     * A task of a {@link Batch} that lets the next one in once it is done.
+     */
+    private static final class Task<T> extends FutureTask<T> {
+        private final Batch<T> batch;
+        private boolean submitted;
+
+        Task(Tracked<T> tracked) {
+            super(tracked);
+            this.batch = tracked.batch;
+        }
+
+        @Override
+        protected void done() {
+            batch.progressAt = System.currentTimeMillis();
+            boolean wasSubmitted;
+            synchronized (batch) {
+                wasSubmitted = submitted;
+            }
+            // cancelling a task that never got its turn frees up no thread
+            if (wasSubmitted) {
+                batch.submitNext();
+            }
+        }
+    }
+
+    /**
+     * State shared by the tasks of one {@link #invokeAll} call.
+     */
+    private static final class Batch<T> {
+        private final String name;
+        private final Authentication authentication;
+        private final Predicate<? super T> stopWhen;
+        private final List<Task<T>> futures = new ArrayList<Task<T>>();
+        private int next;
+        private volatile boolean stopped;
+        /** When a task of this batch last started or finished. */
+        private volatile long progressAt = System.currentTimeMillis();
+
+        Batch(String name, Authentication authentication, Predicate<? super T> stopWhen) {
+            this.name = name;
+            this.authentication = authentication;
+            this.stopWhen = stopWhen;
+        }
+
+        /**
+         * Hands the next task that is not done yet to the pool.
+         */
+        synchronized void submitNext() {
+            while (next < futures.size()) {
+                Task<T> task = futures.get(next++);
+                if (!task.isDone()) {
+                    task.submitted = true;
+                    executor().execute(task);
+                    return;
+                }
+            }
+        }
+
+        synchronized void stop(int winner) {
+            stopped = true;
+            for (int i = 0; i < futures.size(); i++) {
+                if (i != winner) {
+                    futures.get(i).cancel(true);
+                }
+            }
+        }
+    }
+
+    <T> List<Outcome<T>> invokeAll(List<? extends Callable<T>> tasks) throws InterruptedException {
+        return invokeAll(tasks, null);
+    }
+
+    /**
+     * Like {@link #invokeAll(List)}, but as soon as one task returns a value
+     * matching {@code stopWhen} the others are cancelled and reported as skipped.
+     */
+    <T> List<Outcome<T>> invokeAll(List<? extends Callable<T>> tasks, Predicate<? super T> stopWhen)
+            throws InterruptedException {
+        List<Outcome<T>> outcomes = new ArrayList<Outcome<T>>(tasks.size());
+        if (tasks.isEmpty()) {
+            return outcomes;
+        }
+        Batch<T> batch = new Batch<T>(name, Jenkins.getAuthentication2(), stopWhen);
+
+        List<Tracked<T>> tracked = new ArrayList<Tracked<T>>(tasks.size());
+        synchronized (batch) {
+            for (Callable<T> task : tasks) {
+                Tracked<T> t = new Tracked<T>(task, batch, tracked.size());
+                tracked.add(t);
+                batch.futures.add(new Task<T>(t));
+            }
+            for (int i = Math.min(threads, tasks.size()); i > 0; i--) {
+                batch.submitNext();
+            }
+        }
+        boolean done = false;
+        try {
+            for (int i = 0; i < tracked.size(); i++) {
+                outcomes.add(await(batch.futures.get(i), tracked.get(i)));
+            }
+            done = true;
+            return outcomes;
+        } finally {
+            if (!done) {
+                // interrupted: nothing of this batch is to run any more
+                batch.stop(-1);
+            }
+        }
+    }
+
+    private <T> Outcome<T> await(Future<T> future, Tracked<T> task) throws InterruptedException {
+        Outcome<T> outcome = awaitUnlessStopped(future, task);
+        if (!outcome.isSuccess() && task.batch.stopped) {
+            // whatever went wrong, it happened because the batch was stopped
+            return new Outcome<T>(null, null, false, true);
+        }
+        return outcome;
+    }
+
+    private <T> Outcome<T> awaitUnlessStopped(Future<T> future, Tracked<T> task) throws InterruptedException {
+        try {
+            if (timeoutMillis <= 0) {
+                return new Outcome<T>(future.get(), null, false);
+            }
+            while (true) {
+                long startedAt = task.startedAt;
+                // not started yet: check back shortly, the deadline only runs once it is,
+                // unless the whole batch got stuck, e.g. behind hung tasks filling the pool
+                long wait = startedAt < 0 ? Math.min(task.batch.progressAt + timeoutMillis - System.currentTimeMillis(), 1000)
+                        : startedAt + timeoutMillis - System.currentTimeMillis();
+                if (wait <= 0) {
+                    if (future.isDone()) {
+                        // finished while we were waiting for an earlier task
+                        return new Outcome<T>(future.get(), null, false);
+                    }
+                    future.cancel(true);
+                    return new Outcome<T>(null, null, true);
+                }
+                try {
+                    return new Outcome<T>(future.get(wait, TimeUnit.MILLISECONDS), null, false);
+                } catch (TimeoutException e) {
+                    // loop and re-evaluate the deadline
+                }
+            }
+        } catch (ExecutionException e) {
+            return new Outcome<T>(null, e.getCause() != null ? e.getCause() : e, false);
+        } catch (CancellationException e) {
+            return new Outcome<T>(null, e, false);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            throw e;
+        }
+    }
+}
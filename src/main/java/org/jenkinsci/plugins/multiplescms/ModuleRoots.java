@@ -0,0 +1,79 @@
+package org.jenkinsci.plugins.multiplescms;
+
+import hudson.FilePath;
+import hudson.model.AbstractBuild;
+import hudson.scm.SCM;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The module roots of every child of a {@link MultiSCM} in one workspace,
+ * with an index from root path to the child that owns it.
+ */
+final class ModuleRoots {
+    private final List<SCM> scms;
+    private final FilePath[] all;
+    private final Map<String, SCM> owners = new HashMap<String, SCM>();
+
+    ModuleRoots(List<SCM> scms, FilePath workspace, AbstractBuild<?, ?> build) {
+        this.scms = scms;
+        List<FilePath> all = new ArrayList<FilePath>();
+        for (SCM scm : scms) {
+            for (FilePath root : scm.getModuleRoots(workspace, build)) {
+                all.add(root);
+                String path = MultiSCM.normalize(root.getRemote());
+                // children sharing a root: the first one in configured order owns it
+                if (!owners.containsKey(path)) {
+                    owners.put(path, scm);
+                }
+            }
+        }
+        this.all = all.toArray(new FilePath[all.size()]);
+    }
+
+    /**
+     * @return whether these are the roots of exactly these children
+     */
+    boolean isFor(List<SCM> scms) {
+        if (scms.size() != this.scms.size()) {
+            return false;
+        }
+        for (int i = 0; i < scms.size(); i++) {
+            if (scms.get(i) != this.scms.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the roots of all children, in configured order
+     */
+    FilePath[] getAll() {
+        return all.clone();
+    }
+
+    /**
+     * @param path absolute path of a file or directory in the workspace
+     * @return the child whose module root most closely contains {@code path},
+     *         or null if it is outside all of them
+     */
+    SCM getOwner(String path) {
+        String p = MultiSCM.normalize(path);
+        // walk up from the path itself, so nested roots win over their parents
+        while (true) {
+            SCM owner = owners.get(p);
+            if (owner != null) {
+                return owner;
+            }
+            int slash = p.lastIndexOf('/', p.length() - 2);
+            if (slash < 0) {
+                return null;
+            }
+            p = p.substring(0, slash + 1);
+        }
+    }
+}
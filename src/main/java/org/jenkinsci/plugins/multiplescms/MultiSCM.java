@@ -1,10 +1,10 @@
 package org.jenkinsci.plugins.multiplescms;
 
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 import hudson.EnvVars;
 import hudson.Extension;
 import hudson.FilePath;
 import hudson.Launcher;
-import hudson.model.Action;
 import hudson.model.BuildListener;
 import hudson.model.Saveable;
 import hudson.model.TaskListener;
@@ -13,6 +13,7 @@ import hudson.model.AbstractProject;
 import hudson.model.Descriptor;
 import hudson.model.Run;
 import hudson.model.Hudson;
+import hudson.model.Items;
 import hudson.scm.ChangeLogParser;
 import hudson.scm.PollingResult;
 import hudson.scm.PollingResult.Change;
@@ -21,31 +22,85 @@ import hudson.scm.SCMRevisionState;
 import hudson.scm.NullSCM;
 import hudson.scm.SCM;
 import hudson.util.DescribableList;
+import jenkins.model.Jenkins;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import net.sf.json.JSONArray;
 
 import net.sf.json.JSONObject;
 
-import org.apache.commons.io.FileUtils;
-import org.apache.commons.lang.StringEscapeUtils;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.export.Exported;
 
 public class MultiSCM extends SCM implements Saveable {
+    private static final Logger LOGGER = Logger.getLogger(MultiSCM.class.getName());
+
+    static final int DEFAULT_POLLING_THREADS = 4;
+    static final int DEFAULT_CHECKOUT_THREADS = 4;
+
     private DescribableList<SCM,Descriptor<SCM>> scms =
         new DescribableList<SCM,Descriptor<SCM>>(this);
 
+    private static final Predicate<PollingResult> SIGNIFICANT_CHANGE = new Predicate<PollingResult>() {
+        public boolean test(PollingResult result) {
+            return result.change == Change.SIGNIFICANT;
+        }
+    };
+
+    /**
+     * Shared by every build's changelog, built on first use.
+     */
+    private transient volatile MultiSCMChangeLogParser changeLogParser;
+
+    /**
+     * What the most recent poll found, null if there was none since the job was loaded.
+     */
+    private transient volatile PollRecord lastPoll;
+
+    /**
+     * Derived from the children and their polling policies on first use,
+     * dropped whenever either changes.
+     */
+    private transient volatile ChildTraits childTraits;
+
+    private boolean parallelPolling;
+    private boolean fastTrigger;
+    private int pollingThreads;
+    private int pollingTimeout;
+    private boolean parallelCheckout;
+    private int checkoutThreads;
+    private List<ChildPollingPolicy> pollingPolicies;
+    private boolean hybridPolling;
+    private boolean incrementalCheckout;
+    private boolean compressChangelogs;
+    private boolean compressInBackground;
+
+    /**
+     * When each child with a polling policy was last polled, by SCM key.
+     */
+    private transient Map<String, PollSchedule> pollSchedules;
+
     @DataBoundConstructor
     public MultiSCM(List<SCM> scmList) throws IOException {
         scms.addAll(scmList);
@@ -56,69 +111,593 @@ public class MultiSCM extends SCM implements Saveable {
         return scms.toList();
     }
 
+    public boolean isParallelPolling() {
+        return parallelPolling;
+    }
+
+    /**
+     * Poll the child SCMs concurrently instead of one after another.
+     */
+    @DataBoundSetter
+    public void setParallelPolling(boolean parallelPolling) {
+        this.parallelPolling = parallelPolling;
+    }
+
+    public boolean isFastTrigger() {
+        return fastTrigger;
+    }
+
+    /**
+     * Stop polling the remaining child SCMs once one of them reports a
+     * significant change. The skipped children keep their previous baseline.
+     */
+    @DataBoundSetter
+    public void setFastTrigger(boolean fastTrigger) {
+        this.fastTrigger = fastTrigger;
+    }
+
+    public int getPollingThreads() {
+        return pollingThreads > 0 ? pollingThreads : DEFAULT_POLLING_THREADS;
+    }
+
+    @DataBoundSetter
+    public void setPollingThreads(int pollingThreads) {
+        this.pollingThreads = Math.max(0, pollingThreads);
+    }
+
+    /**
+     * @return seconds a single child poll may take in parallel mode, 0 for no limit
+     */
+    public int getPollingTimeout() {
+        return pollingTimeout;
+    }
+
+    @DataBoundSetter
+    public void setPollingTimeout(int pollingTimeout) {
+        this.pollingTimeout = Math.max(0, pollingTimeout);
+    }
+
+    public boolean isParallelCheckout() {
+        return parallelCheckout;
+    }
+
+    /**
+     * Check out child SCMs with non-overlapping module roots concurrently.
+     */
+    @DataBoundSetter
+    public void setParallelCheckout(boolean parallelCheckout) {
+        this.parallelCheckout = parallelCheckout;
+    }
+
+    public int getCheckoutThreads() {
+        return checkoutThreads > 0 ? checkoutThreads : DEFAULT_CHECKOUT_THREADS;
+    }
+
+    @DataBoundSetter
+    public void setCheckoutThreads(int checkoutThreads) {
+        this.checkoutThreads = Math.max(0, checkoutThreads);
+    }
+
+    public boolean isHybridPolling() {
+        return hybridPolling;
+    }
+
+    /**
+     * Poll on the controller even if some children need a workspace to poll;
+     * only those are polled in the workspace of the job's last build, the
+     * others do not wait for an agent. Implies parallel polling.
+     */
+    @DataBoundSetter
+    public void setHybridPolling(boolean hybridPolling) {
+        this.hybridPolling = hybridPolling;
+    }
+
+    public boolean isIncrementalCheckout() {
+        return incrementalCheckout;
+    }
+
+    /**
+     * Leave children that the last poll found unchanged as the previous build
+     * in the same workspace checked them out.
+     */
+    @DataBoundSetter
+    public void setIncrementalCheckout(boolean incrementalCheckout) {
+        this.incrementalCheckout = incrementalCheckout;
+    }
+
+    public boolean isCompressChangelogs() {
+        return compressChangelogs;
+    }
+
+    /**
+     * Gzip the children's changelogs in the build directory.
+     */
+    @DataBoundSetter
+    public void setCompressChangelogs(boolean compressChangelogs) {
+        this.compressChangelogs = compressChangelogs;
+    }
+
+    public boolean isCompressInBackground() {
+        return compressInBackground;
+    }
+
+    /**
+     * Compress the changelogs while the build runs its steps rather than
+     * before. Only applies together with {@link #setCompressChangelogs}.
+     */
+    @DataBoundSetter
+    public void setCompressInBackground(boolean compressInBackground) {
+        this.compressInBackground = compressInBackground;
+    }
+
+    public List<ChildPollingPolicy> getPollingPolicies() {
+        return pollingPolicies != null ? pollingPolicies : Collections.<ChildPollingPolicy>emptyList();
+    }
+
+    /**
+     * How often individual children are polled; children without a policy
+     * are polled on every cycle.
+     */
+    @DataBoundSetter
+    public void setPollingPolicies(List<ChildPollingPolicy> pollingPolicies) {
+        this.pollingPolicies = pollingPolicies != null && !pollingPolicies.isEmpty()
+                ? new ArrayList<ChildPollingPolicy>(pollingPolicies) : null;
+        childTraits = null;
+    }
+
+    private ChildPollingPolicy getPollingPolicy(SCM scm) {
+        return childTraits().policies.get(scm.getKey());
+    }
+
+    private ChildTraits childTraits() {
+        ChildTraits traits = childTraits;
+        if (traits == null) {
+            traits = new ChildTraits(scms.toList(), getPollingPolicies());
+            childTraits = traits;
+        }
+        return traits;
+    }
+
+    /**
+     * What Jenkins keeps asking about this job's children, answered once for
+     * all of them rather than by asking each of them every time.
+     */
+    private static final class ChildTraits {
+        final Map<String, ChildPollingPolicy> policies = new HashMap<String, ChildPollingPolicy>();
+        final boolean supportsPolling;
+        final boolean requiresWorkspace;
+        /**
+         * For every child, the position of the first child configured exactly
+         * like it, or -1 if it is the first of its kind. Only identical
+         * configurations count: children of the same remote with another
+         * branch or directory need polls and checkouts of their own.
+         */
+        final int[] sameAs;
+        /**
+         * Problems with the children's keys, to be shown on every poll and build.
+         */
+        final List<String> warnings = new ArrayList<String>();
+
+        ChildTraits(List<SCM> scms, List<ChildPollingPolicy> pollingPolicies) {
+            for (ChildPollingPolicy policy : pollingPolicies) {
+                // the first policy for a child is the one that applies
+                if (!policies.containsKey(policy.getScmKey())) {
+                    policies.put(policy.getScmKey(), policy);
+                }
+            }
+            boolean supportsPolling = true;
+            boolean requiresWorkspace = false;
+            for (SCM scm : scms) {
+                ChildPollingPolicy policy = policies.get(scm.getKey());
+                if (policy != null && policy.isNever()) {
+                    continue;
+                }
+                supportsPolling &= scm.supportsPolling();
+                requiresWorkspace |= scm.requiresWorkspaceForPolling();
+            }
+            this.supportsPolling = supportsPolling;
+            this.requiresWorkspace = requiresWorkspace;
+
+            sameAs = new int[scms.size()];
+            Map<String, Integer> byXml = new HashMap<String, Integer>();
+            Map<String, Integer> byKey = new HashMap<String, Integer>();
+            for (int i = 0; i < scms.size(); i++) {
+                SCM scm = scms.get(i);
+                String xml = toXML(scm);
+                Integer same = xml != null ? byXml.get(xml) : null;
+                sameAs[i] = same != null ? same : -1;
+                if (same != null) {
+                    warnings.add(String.format("Warning: SCM %d is configured exactly like SCM %d (%s); "
+                            + "it is only polled and checked out once", i + 1, same + 1, scm.getKey()));
+                    continue;
+                }
+                if (xml != null) {
+                    byXml.put(xml, i);
+                }
+                Integer other = byKey.get(scm.getKey());
+                if (other != null) {
+                    warnings.add(String.format("Warning: SCMs %d and %d have the same key (%s); "
+                            + "their revision states overwrite each other and only the changes of SCM %d are shown",
+                            other + 1, i + 1, scm.getKey(), other + 1));
+                } else {
+                    byKey.put(scm.getKey(), i);
+                }
+            }
+        }
+
+        /**
+         * Configurations of children, kept while the child is, so that
+         * traits rebuilt for e.g. new polling policies do not serialize every
+         * child again. Saving a job's configuration creates new children.
+         */
+        private static final Map<SCM, String> CONFIGURATIONS =
+                Collections.synchronizedMap(new WeakHashMap<SCM, String>());
+
+        /**
+         * @return the child's configuration, or null if it does not serialize
+         */
+        private static String toXML(SCM scm) {
+            String xml = CONFIGURATIONS.get(scm);
+            if (xml != null) {
+                return xml;
+            }
+            try {
+                xml = Items.XSTREAM2.toXML(scm);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.FINE, "Cannot compare " + scm.getKey() + " with the other SCMs", e);
+                return null;
+            }
+            CONFIGURATIONS.put(scm, xml);
+            return xml;
+        }
+
+        void printWarnings(TaskListener listener) {
+            for (String warning : warnings) {
+                listener.getLogger().println(warning);
+            }
+        }
+    }
+
+    /**
+     * Decides whether a child with a polling policy is polled on this cycle.
+     * A child stays due until one of its polls succeeds, see {@link #polled}.
+     */
+    private synchronized boolean isDue(ChildPollingPolicy policy, SCM scm, long now) {
+        if (policy.isNever()) {
+            return false;
+        }
+        if (pollSchedules == null) {
+            pollSchedules = new HashMap<String, PollSchedule>();
+        }
+        PollSchedule schedule = pollSchedules.get(scm.getKey());
+        if (schedule == null) {
+            // not polled since Jenkins started or the job was reconfigured
+            schedule = new PollSchedule();
+            pollSchedules.put(scm.getKey(), schedule);
+        }
+        if (schedule.lastPolledAt < 0) {
+            return true;
+        }
+        schedule.cycles++;
+        return policy.isDue(schedule.cycles, now - schedule.lastPolledAt);
+    }
+
+    /**
+     * Starts counting cycles anew for a child with a polling policy, once it
+     * was actually polled; a due child that was skipped, failed or timed out
+     * is still due on the next cycle.
+     */
+    private synchronized void polled(SCM scm, long at) {
+        PollSchedule schedule = pollSchedules != null ? pollSchedules.get(scm.getKey()) : null;
+        if (schedule != null) {
+            schedule.cycles = 0;
+            schedule.lastPolledAt = at;
+        }
+    }
+
+    private static final class PollSchedule {
+        int cycles;
+        /** -1 until polled successfully */
+        long lastPolledAt = -1;
+    }
+
     @Override
-    public SCMRevisionState calcRevisionsFromBuild(AbstractBuild<?, ?> build,
-            Launcher launcher, TaskListener listener) throws IOException,
+    public SCMRevisionState calcRevisionsFromBuild(final AbstractBuild<?, ?> build,
+            final Launcher launcher, final TaskListener listener) throws IOException,
             InterruptedException {
 
         MultiSCMRevisionState revisionStates = new MultiSCMRevisionState();
+        FilePath workspace = build.getWorkspace();
 
-        for(SCM scm : scms) {
-            SCMRevisionState scmState = scm.calcRevisionsFromBuild(build, launcher, listener);
-            revisionStates.add(scm, build.getWorkspace(), build, scmState);
+        if (!parallelPolling || scms.size() < 2) {
+            for(SCM scm : scms) {
+                SCMRevisionState scmState = scm.calcRevisionsFromBuild(build, launcher, listener);
+                revisionStates.add(scm, workspace, build, scmState);
+            }
+            return revisionStates;
         }
 
+        // with parallel polling the children's states are worked out side by side as well
+        List<SCM> children = scms.toList();
+        List<Callable<SCMRevisionState>> tasks = new ArrayList<Callable<SCMRevisionState>>(children.size());
+        for (final SCM scm : children) {
+            tasks.add(new Callable<SCMRevisionState>() {
+                public SCMRevisionState call() throws Exception {
+                    return scm.calcRevisionsFromBuild(build, launcher, listener);
+                }
+            });
+        }
+        List<ChildTaskRunner.Outcome<SCMRevisionState>> outcomes =
+                new ChildTaskRunner("MultiSCM revisions " + build.getFullDisplayName(), getPollingThreads(), 0)
+                        .invokeAll(tasks);
+        rethrowFailure(outcomes, "Calculating revisions failed");
+        for (int i = 0; i < children.size(); i++) {
+            revisionStates.add(children.get(i), workspace, build, outcomes.get(i).getValue());
+        }
         return revisionStates;
     }
 
+    /**
+     * Adds the variables of every child. The first child, in configured
+     * order, to define a variable gets it under its own name; any later
+     * child defining it as well gets it as {@code NAME_<index>}, its
+     * zero-based position in the list of SCMs. Variables already in
+     * {@code env} are overwritten, as a single SCM would.
+     *
+     * Once the build is checked out the merged variables are computed only once.
+     */
     @Override
     public void buildEnvVars(AbstractBuild<?,?> build, Map<String, String> env) {
-        // Add each SCM's env vars, appending indices where needed to avoid collisions
+        MultiSCMBuildData data = build.getAction(MultiSCMBuildData.class);
+        Map<String, String> merged = data != null ? data.getEnvironment() : null;
+        if (merged == null) {
+            Map<String, String> vars = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+            boolean complete = mergeEnvVars(build, vars);
+            merged = Collections.unmodifiableMap(vars);
+            // if a child failed, try again on the next call
+            if (data != null && complete) {
+                data.setEnvironment(merged);
+            }
+        }
+        env.putAll(merged);
+    }
+
+    /**
+     * @return false if the variables of a child could not be determined
+     */
+    private boolean mergeEnvVars(AbstractBuild<?, ?> build, Map<String, String> merged) {
+        boolean complete = true;
         for (int i = 0; i < scms.size(); i++) {
+            SCM scm = scms.get(i);
+            EnvVars currScmVars = new EnvVars();
             try {
-                EnvVars currScmVars = new EnvVars();
-                scms.get(i).buildEnvVars(build, currScmVars);
-                for (Entry<String, String> entry : currScmVars.entrySet()) {
-                    if (env.containsKey(entry.getKey())) {
-                        // We have a collision; append the index of this SCM to the env var name
-                        env.put(entry.getKey() + "_" + i, entry.getValue());
-                    } else {
-                        // No collision; just put the var as usual
-                        env.put(entry.getKey(), entry.getValue());
-                    }
+                scm.buildEnvVars(build, currScmVars);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Failed to get the environment variables of " + scm.getKey()
+                        + " for " + build, e);
+                complete = false;
+                continue;
+            }
+            for (Entry<String, String> entry : currScmVars.entrySet()) {
+                if (merged.containsKey(entry.getKey())) {
+                    // We have a collision; append the index of this SCM to the env var name
+                    merged.put(entry.getKey() + "_" + i, entry.getValue());
+                } else {
+                    merged.put(entry.getKey(), entry.getValue());
                 }
             }
-            catch(NullPointerException npe)
-            {}
-            
         }
+        return complete;
     }
 
     @Override
     protected PollingResult compareRemoteRevisionWith(
-            AbstractProject<?, ?> project, Launcher launcher,
-            FilePath workspace, TaskListener listener, SCMRevisionState baseline)
+            final AbstractProject<?, ?> project, final Launcher launcher,
+            final FilePath workspace, final TaskListener listener, SCMRevisionState baseline)
             throws IOException, InterruptedException {
 
         MultiSCMRevisionState baselineStates = baseline instanceof MultiSCMRevisionState ? (MultiSCMRevisionState) baseline : null;
         MultiSCMRevisionState currentStates = new MultiSCMRevisionState();
 
-        Change overallChange = Change.NONE;
-
-        for(SCM scm : scms) {
+        ChildTraits traits = childTraits();
+        traits.printWarnings(listener);
+        List<SCM> children = scms.toList();
+        List<SCM> toPoll = new ArrayList<SCM>();
+        List<SCMRevisionState> toPollBaselines = new ArrayList<SCMRevisionState>();
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < children.size(); i++) {
+            SCM scm = children.get(i);
+            if (traits.sameAs[i] >= 0) {
+                // configured exactly like an earlier child, whose result counts for both
+                continue;
+            }
             SCMRevisionState scmBaseline = baselineStates != null ? baselineStates.get(scm, workspace, null) : null;
             if (scmBaseline instanceof MultiSCMRevisionState
                     && !(scm instanceof MultiSCM)) {
                 continue;
             }
-            PollingResult scmResult = scm.poll(project, launcher, workspace, listener, scmBaseline != null ? scmBaseline : SCMRevisionState.NONE);
-            currentStates.add(scm, workspace, null, scmResult.remote);
-            if(scmResult.change.compareTo(overallChange) > 0)
-                overallChange = scmResult.change;
+            if (scmBaseline == null) {
+                scmBaseline = SCMRevisionState.NONE;
+            }
+            ChildPollingPolicy policy = getPollingPolicy(scm);
+            if (policy != null && !isDue(policy, scm, now)) {
+                // Carry the baseline forward, changes are picked up once the child is due again
+                listener.getLogger().println("Not polling " + scm.getKey() + " on this cycle");
+                currentStates.add(scm, workspace, null, scmBaseline);
+                continue;
+            }
+            toPoll.add(scm);
+            toPollBaselines.add(scmBaseline);
         }
+
+        List<Launcher> toPollLaunchers = new ArrayList<Launcher>(Collections.nCopies(toPoll.size(), launcher));
+        List<FilePath> toPollWorkspaces = new ArrayList<FilePath>(Collections.nCopies(toPoll.size(), workspace));
+        PollingWorkspace agentWorkspace = null;
+        if (hybridPolling && workspace == null) {
+            // Polling on the controller: only the children that need a
+            // workspace go to the agent holding the job's workspace
+            boolean needsWorkspace = false;
+            for (SCM scm : toPoll) {
+                needsWorkspace |= scm.requiresWorkspaceForPolling();
+            }
+            if (needsWorkspace) {
+                agentWorkspace = PollingWorkspace.acquire(project, listener);
+            }
+            for (int i = toPoll.size() - 1; i >= 0; i--) {
+                SCM scm = toPoll.get(i);
+                if (!scm.requiresWorkspaceForPolling()) {
+                    continue;
+                }
+                if (agentWorkspace == null) {
+                    // Rather than build just to get a workspace, wait for one to turn up
+                    listener.getLogger().println("Not polling " + scm.getKey() + " until a workspace is available");
+                    currentStates.add(scm, workspace, null, toPollBaselines.get(i));
+                    toPoll.remove(i);
+                    toPollBaselines.remove(i);
+                    toPollLaunchers.remove(i);
+                    toPollWorkspaces.remove(i);
+                } else {
+                    toPollLaunchers.set(i, agentWorkspace.getLauncher());
+                    toPollWorkspaces.set(i, agentWorkspace.getWorkspace());
+                }
+            }
+        }
+
+        try {
+            return pollChildren(project, listener, toPoll, toPollBaselines, toPollLaunchers, toPollWorkspaces,
+                    baselineStates, currentStates);
+        } finally {
+            if (agentWorkspace != null) {
+                agentWorkspace.close();
+            }
+        }
+    }
+
+    /**
+     * Polls the given children, sequentially or in parallel, and merges
+     * their results into {@code currentStates} in configured order.
+     */
+    private PollingResult pollChildren(final AbstractProject<?, ?> project, final TaskListener listener,
+            List<SCM> toPoll, List<SCMRevisionState> toPollBaselines,
+            List<Launcher> toPollLaunchers, List<FilePath> toPollWorkspaces,
+            MultiSCMRevisionState baselineStates, MultiSCMRevisionState currentStates)
+            throws IOException, InterruptedException {
+        Change overallChange = Change.NONE;
+        final PollRecord record = new PollRecord(System.currentTimeMillis());
+
+        if (!(parallelPolling || hybridPolling) || toPoll.size() < 2) {
+            for (int i = 0; i < toPoll.size(); i++) {
+                SCM scm = toPoll.get(i);
+                FilePath workspace = toPollWorkspaces.get(i);
+                if (fastTrigger && overallChange == Change.SIGNIFICANT) {
+                    // The outcome is settled, don't bother the remaining remotes
+                    currentStates.add(scm, workspace, null, toPollBaselines.get(i));
+                    continue;
+                }
+                PollingResult scmResult = timedPoll(scm, project, toPollLaunchers.get(i), workspace, listener, toPollBaselines.get(i), record);
+                polled(scm, record.time);
+                currentStates.add(scm, workspace, null, scmResult.remote);
+                if(scmResult.change.compareTo(overallChange) > 0)
+                    overallChange = scmResult.change;
+            }
+            lastPoll = record;
+            return new PollingResult(baselineStates, currentStates, overallChange);
+        }
+
+        List<Callable<PollingResult>> polls = new ArrayList<Callable<PollingResult>>(toPoll.size());
+        for (int i = 0; i < toPoll.size(); i++) {
+            final SCM scm = toPoll.get(i);
+            final SCMRevisionState scmBaseline = toPollBaselines.get(i);
+            final Launcher launcher = toPollLaunchers.get(i);
+            final FilePath workspace = toPollWorkspaces.get(i);
+            polls.add(new Callable<PollingResult>() {
+                public PollingResult call() throws Exception {
+                    return timedPoll(scm, project, launcher, workspace, listener, scmBaseline, record);
+                }
+            });
+        }
+
+        List<ChildTaskRunner.Outcome<PollingResult>> outcomes =
+                new ChildTaskRunner("MultiSCM polling " + project.getFullName(),
+                        getPollingThreads(), TimeUnit.SECONDS.toMillis(pollingTimeout))
+                        .invokeAll(polls, fastTrigger ? SIGNIFICANT_CHANGE : null);
+
+        // Merge in configured order so the resulting state does not depend on
+        // which child happened to answer first
+        for (int i = 0; i < toPoll.size(); i++) {
+            SCM scm = toPoll.get(i);
+            FilePath workspace = toPollWorkspaces.get(i);
+            ChildTaskRunner.Outcome<PollingResult> outcome = outcomes.get(i);
+            if (outcome.isSkipped()) {
+                currentStates.add(scm, workspace, null, toPollBaselines.get(i));
+            } else if (outcome.isSuccess()) {
+                PollingResult scmResult = outcome.getValue();
+                polled(scm, record.time);
+                currentStates.add(scm, workspace, null, scmResult.remote);
+                if(scmResult.change.compareTo(overallChange) > 0)
+                    overallChange = scmResult.change;
+            } else {
+                // Keep the old baseline so the next cycle compares against it again
+                if (outcome.isTimedOut()) {
+                    listener.getLogger().println("Polling " + scm.getKey() + " timed out after "
+                            + pollingTimeout + " seconds, will retry on the next polling cycle");
+                } else {
+                    listener.getLogger().println("Polling " + scm.getKey() + " failed, will retry on the next polling cycle");
+                    outcome.getFailure().printStackTrace(listener.getLogger());
+                }
+                currentStates.add(scm, workspace, null, toPollBaselines.get(i));
+            }
+        }
+        lastPoll = record;
         return new PollingResult(baselineStates, currentStates, overallChange);
     }
 
+    private static PollingResult timedPoll(final SCM scm, final AbstractProject<?, ?> project, final Launcher launcher,
+            final FilePath workspace, final TaskListener listener, final SCMRevisionState baseline, PollRecord record)
+            throws IOException, InterruptedException {
+        long start = System.currentTimeMillis();
+        PollingResult result;
+        PollingCache cache = getPollingCache();
+        if (cache == null) {
+            result = scm.poll(project, launcher, workspace, listener, baseline);
+        } else {
+            PollingCache.Result cached = cache.poll(scm, baseline, new Callable<PollingResult>() {
+                public PollingResult call() throws Exception {
+                    return scm.poll(project, launcher, workspace, listener, baseline);
+                }
+            });
+            if (cached.cached) {
+                listener.getLogger().println("Reusing a recent poll of " + scm.getKey() + " made for another job");
+            }
+            result = cached.result;
+        }
+        long millis = System.currentTimeMillis() - start;
+        record.millis.put(scm.getKey(), millis);
+        record.changes.put(scm.getKey(), result.change);
+        listener.getLogger().println("Polled " + scm.getKey() + " in " + millis + " ms: " + result.change);
+        return result;
+    }
+
+    /**
+     * Per child results of one polling cycle, for the checkout that may follow.
+     * Children that were not actually polled are missing.
+     */
+    private static final class PollRecord {
+        final long time;
+        final Map<String, Long> millis = new ConcurrentHashMap<String, Long>();
+        final Map<String, Change> changes = new ConcurrentHashMap<String, Change>();
+
+        PollRecord(long time) {
+            this.time = time;
+        }
+    }
+
+    private static PollingCache getPollingCache() {
+        Jenkins jenkins = Jenkins.getInstanceOrNull();
+        DescriptorImpl descriptor = jenkins != null ? jenkins.getDescriptorByType(DescriptorImpl.class) : null;
+        return descriptor != null ? descriptor.getPollingCache() : null;
+    }
+
     @Override
     public void checkout(Run<?, ?> build, Launcher launcher,
             FilePath workspace, TaskListener listener, File changelogFile, SCMRevisionState baseline)
@@ -126,54 +705,385 @@ public class MultiSCM extends SCM implements Saveable {
 
         MultiSCMRevisionState oldBaseline = baseline instanceof MultiSCMRevisionState ? (MultiSCMRevisionState) baseline : null;
         MultiSCMRevisionState revisionState = new MultiSCMRevisionState();
+        RevisionStateTracker stateTracker = new RevisionStateTracker(build);
         build.addAction(revisionState);
 
-        HashSet<Object> scmActions = new HashSet<Object>();
-
-        FileOutputStream logStream = new FileOutputStream(changelogFile);
-        OutputStreamWriter logWriter = new OutputStreamWriter(logStream);
-        logWriter.write(String.format("<%s>\n", MultiSCMChangeLogParser.ROOT_XML_TAG));
-
-        for(SCM scm : scms) {
-            File subChangeLog = changelogFile != null ? new File(changelogFile.getPath() + ".temp") : null;
+        AbstractBuild<?, ?> abstractBuild = build instanceof AbstractBuild ? (AbstractBuild<?, ?>) build : null;
+        AbstractBuild<?, ?> lastBuild = incrementalCheckout && oldBaseline != null
+                ? lastBuildInWorkspace(build, workspace) : null;
+        // only a poll made since the previous build can have led to this one
+        PollRecord poll = lastPoll;
+        if (poll != null && !polledSince(poll, build.getPreviousBuild())) {
+            poll = null;
+        }
+        ChildTraits traits = childTraits();
+        traits.printWarnings(listener);
+        List<ChildCheckout> checkouts = new ArrayList<ChildCheckout>(scms.size());
+        List<ChildCheckout> toCheckOut = new ArrayList<ChildCheckout>(scms.size());
+        for (int i = 0; i < scms.size(); i++) {
+            SCM scm = scms.get(i);
+            if (traits.sameAs[i] >= 0) {
+                // into the same directories, with the same changes, as the first one
+                ChildCheckout checkout = new ChildCheckout(scm, null, null);
+                checkout.duplicate = true;
+                checkouts.add(checkout);
+                continue;
+            }
+            // every child keeps its own changelog, so they can be checked out side by side
+            File subChangeLog = changelogFile != null ? MultiSCMChangeLogWriter.subLogFile(changelogFile, i) : null;
             SCMRevisionState workspaceRevision = null;
             if (oldBaseline != null) {
-                            workspaceRevision = oldBaseline.get(scm, workspace, build instanceof AbstractBuild ? (AbstractBuild) build : null);
+                workspaceRevision = oldBaseline.get(scm, workspace, abstractBuild);
             }
-            scm.checkout(build, launcher, workspace, listener, subChangeLog, workspaceRevision);
+            ChildCheckout checkout = new ChildCheckout(scm, subChangeLog, workspaceRevision);
+            checkouts.add(checkout);
+            if (lastBuild != null && isUnchanged(scm, lastBuild, poll, workspace, abstractBuild)) {
+                listener.getLogger().println("Skipping checkout of " + scm.getKey()
+                        + ", unchanged since " + lastBuild.getFullDisplayName());
+                checkout.skipped = true;
+            } else {
+                toCheckOut.add(checkout);
+            }
+        }
 
-            List<Action> actions = build.getActions();
-            for(Action a : actions) {
-                if(!scmActions.contains(a) && a instanceof SCMRevisionState && !(a instanceof MultiSCMRevisionState)) {
-                    scmActions.add(a);
-                    revisionState.add(scm, workspace, build, (SCMRevisionState) a);
+        boolean success = false;
+        try {
+            if (parallelCheckout && toCheckOut.size() > 1) {
+                checkoutConcurrently(toCheckOut, build, launcher, workspace, listener);
+            } else {
+                for (ChildCheckout checkout : toCheckOut) {
+                    checkout.run(build, launcher, workspace, listener);
+                    checkout.states = stateTracker.claimAll();
                 }
             }
-            if (subChangeLog != null && subChangeLog.exists()) {
-                String subLogText = FileUtils.readFileToString(subChangeLog);
-                //Dont forget to escape the XML in case there is any CDATA sections
-                logWriter.write(String.format("<%s scm=\"%s\">\n<![CDATA[%s]]>\n</%s>\n",
-                        MultiSCMChangeLogParser.SUB_LOG_TAG,
-                        StringEscapeUtils.escapeXml(scm.getKey()),
-                        StringEscapeUtils.escapeXml(subLogText),
-                        MultiSCMChangeLogParser.SUB_LOG_TAG));
 
-                subChangeLog.delete();
+            for (ChildCheckout checkout : checkouts) {
+                if (checkout.duplicate) {
+                    continue;
+                }
+                if (checkout.skipped) {
+                    // the workspace still has what the last build checked out
+                    revisionState.add(checkout.scm, workspace, build, checkout.baseline);
+                    continue;
+                }
+                for (SCMRevisionState state : checkout.states) {
+                    revisionState.add(checkout.scm, workspace, build, state);
+                }
+            }
+
+            List<File> toCompress = Collections.emptyList();
+            if (changelogFile != null) {
+                toCompress = writeChangeLog(changelogFile, checkouts);
+            }
+
+            Map<String, Long> pollMillis = poll != null ? poll.millis : Collections.<String, Long>emptyMap();
+            List<MultiSCMTimingAction.ChildTiming> timings = new ArrayList<MultiSCMTimingAction.ChildTiming>();
+            for (ChildCheckout checkout : checkouts) {
+                timings.add(checkout.timing(pollMillis));
+            }
+            // a build may be checked out more than once, e.g. by several Pipeline steps
+            build.addOrReplaceAction(MultiSCMTimingAction.merge(build.getAction(MultiSCMTimingAction.class), timings));
+            List<String> checkedOut = new ArrayList<String>(checkouts.size());
+            for (ChildCheckout checkout : checkouts) {
+                if (!checkout.duplicate) {
+                    checkedOut.add(checkout.scm.getKey());
+                }
+            }
+            build.addOrReplaceAction(new MultiSCMBuildData(build.getAction(MultiSCMBuildData.class), checkedOut));
+            for (File subChangeLog : toCompress) {
+                ChangeLogCompression.submit(subChangeLog);
+            }
+            success = true;
+        } finally {
+            if (!success) {
+                for (ChildCheckout checkout : checkouts) {
+                    if (checkout.subChangeLog != null) {
+                        checkout.subChangeLog.delete();
+                        MultiSCMChangeLogWriter.compressedFile(checkout.subChangeLog).delete();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the previous build if it completed in the same workspace, i.e.
+     *         the one whose checkout the workspace still holds
+     */
+    private static AbstractBuild<?, ?> lastBuildInWorkspace(Run<?, ?> build, FilePath workspace) {
+        Run<?, ?> previous = build.getPreviousBuild();
+        if (!(previous instanceof AbstractBuild) || previous.isBuilding()) {
+            return null;
+        }
+        AbstractBuild<?, ?> lastBuild = (AbstractBuild<?, ?>) previous;
+        return workspace.equals(lastBuild.getWorkspace()) ? lastBuild : null;
+    }
+
+    /**
+     * Whether the child can be left as {@code lastBuild} checked it out: it
+     * was part of that build, the last poll, made after the build, found no
+     * change, and its module roots are still there.
+     */
+    private static boolean isUnchanged(SCM scm, AbstractBuild<?, ?> lastBuild, PollRecord poll,
+            FilePath workspace, AbstractBuild<?, ?> build) throws IOException, InterruptedException {
+        if (poll == null || poll.changes.get(scm.getKey()) != Change.NONE || !polledSince(poll, lastBuild)) {
+            return false;
+        }
+        MultiSCMBuildData lastData = lastBuild.getAction(MultiSCMBuildData.class);
+        if (lastData == null || !lastData.isCheckedOut(scm.getKey())) {
+            return false;
+        }
+        for (FilePath root : scm.getModuleRoots(workspace, build)) {
+            if (!root.exists() || root.list().isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return whether {@code poll} was made after {@code lastBuild}, if any, was done
+     */
+    private static boolean polledSince(PollRecord poll, Run<?, ?> lastBuild) {
+        return lastBuild == null || poll.time >= lastBuild.getStartTimeInMillis() + lastBuild.getDuration();
+    }
+
+    /**
+     * @return the children's changelogs that are still to be compressed in the background
+     */
+    private List<File> writeChangeLog(File changelogFile, List<ChildCheckout> checkouts) throws IOException {
+        List<File> toCompress = new ArrayList<File>();
+        MultiSCMChangeLogWriter logWriter = new MultiSCMChangeLogWriter(changelogFile);
+        try {
+            for (ChildCheckout checkout : checkouts) {
+                File subChangeLog = checkout.subChangeLog;
+                if (subChangeLog != null && subChangeLog.exists()) {
+                    if (compressChangelogs && compressInBackground) {
+                        // recorded as compressed already, readers wait for it
+                        logWriter.addSubLog(checkout.scm.getKey(),
+                                MultiSCMChangeLogWriter.compressedFile(subChangeLog), true);
+                        toCompress.add(subChangeLog);
+                    } else if (compressChangelogs) {
+                        File stored = MultiSCMChangeLogWriter.compress(subChangeLog);
+                        logWriter.addSubLog(checkout.scm.getKey(), stored, !stored.equals(subChangeLog));
+                    } else {
+                        logWriter.addSubLog(checkout.scm.getKey(), subChangeLog);
+                    }
+                }
+            }
+        } finally {
+            logWriter.close();
+        }
+        return toCompress;
+    }
+
+    /**
+     * Checks out children side by side. Children whose module roots overlap
+     * share a lane and are checked out one after another, in configured order.
+     *
+     * Revision states added to the build while other children are checking
+     * out cannot be told apart, so each child's state is the one it works out
+     * from the build right after its own checkout, as Pipeline's checkout
+     * step asks for it too.
+     */
+    private void checkoutConcurrently(List<ChildCheckout> checkouts, final Run<?, ?> build,
+            final Launcher launcher, final FilePath workspace, final TaskListener listener)
+            throws IOException, InterruptedException {
+
+        List<Callable<Void>> lanes = new ArrayList<Callable<Void>>();
+        for (final List<ChildCheckout> lane : splitIntoLanes(checkouts, workspace,
+                build instanceof AbstractBuild ? (AbstractBuild<?, ?>) build : null)) {
+            lanes.add(new Callable<Void>() {
+                public Void call() throws Exception {
+                    for (ChildCheckout checkout : lane) {
+                        checkout.run(build, launcher, workspace, listener);
+                        SCMRevisionState state = checkout.scm.calcRevisionsFromBuild(build, workspace, launcher, listener);
+                        checkout.states = state != null
+                                ? Collections.singletonList(state) : Collections.<SCMRevisionState>emptyList();
+                    }
+                    return null;
+                }
+            });
+        }
+
+        List<ChildTaskRunner.Outcome<Void>> outcomes =
+                new ChildTaskRunner("MultiSCM checkout " + build.getFullDisplayName(), getCheckoutThreads(), 0)
+                        .invokeAll(lanes);
+        rethrowFailure(outcomes, "Checkout failed");
+    }
+
+    /**
+     * Throws the failure of the first child task that failed, if any.
+     */
+    private static <T> void rethrowFailure(List<ChildTaskRunner.Outcome<T>> outcomes, String message)
+            throws IOException, InterruptedException {
+        for (ChildTaskRunner.Outcome<T> outcome : outcomes) {
+            Throwable failure = outcome.getFailure();
+            if (failure instanceof IOException) {
+                throw (IOException) failure;
+            } else if (failure instanceof InterruptedException) {
+                throw (InterruptedException) failure;
+            } else if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            } else if (failure != null) {
+                throw new IOException(message, failure);
+            }
+        }
+    }
+
+    /**
+     * Groups children whose module roots are nested in one another, keeping the
+     * configured order inside each group.
+     */
+    private static List<List<ChildCheckout>> splitIntoLanes(List<ChildCheckout> checkouts,
+            FilePath workspace, AbstractBuild<?, ?> build) {
+        int n = checkouts.size();
+        List<Root> roots = new ArrayList<Root>();
+        for (int i = 0; i < n; i++) {
+            for (FilePath root : checkouts.get(i).scm.getModuleRoots(workspace, build)) {
+                roots.add(new Root(normalize(root.getRemote()), i));
+            }
+        }
+
+        // Sorted, every root directly follows the roots it is nested in, so
+        // one pass with a stack of enclosing roots finds all the overlaps
+        // without comparing every child with every other one
+        Collections.sort(roots);
+        int[] lane = new int[n];
+        for (int i = 0; i < n; i++) {
+            lane[i] = i;
+        }
+        Deque<Root> enclosing = new ArrayDeque<Root>();
+        for (Root root : roots) {
+            while (!enclosing.isEmpty() && !root.path.startsWith(enclosing.peek().path)) {
+                enclosing.pop();
+            }
+            if (!enclosing.isEmpty()) {
+                union(lane, root.child, enclosing.peek().child);
+            }
+            enclosing.push(root);
+        }
+
+        Map<Integer, List<ChildCheckout>> lanes = new LinkedHashMap<Integer, List<ChildCheckout>>();
+        for (int i = 0; i < n; i++) {
+            int l = find(lane, i);
+            List<ChildCheckout> children = lanes.get(l);
+            if (children == null) {
+                children = new ArrayList<ChildCheckout>();
+                lanes.put(l, children);
+            }
+            children.add(checkouts.get(i));
+        }
+        return new ArrayList<List<ChildCheckout>>(lanes.values());
+    }
+
+    /**
+     * A module root and the index of the child it belongs to.
+     */
+    private static final class Root implements Comparable<Root> {
+        final String path;
+        final int child;
+
+        Root(String path, int child) {
+            this.path = path;
+            this.child = child;
+        }
+
+        public int compareTo(Root o) {
+            return path.compareTo(o.path);
+        }
+    }
+
+    private static int find(int[] lane, int i) {
+        while (lane[i] != i) {
+            lane[i] = lane[lane[i]];
+            i = lane[i];
+        }
+        return i;
+    }
+
+    private static void union(int[] lane, int a, int b) {
+        lane[find(lane, a)] = find(lane, b);
+    }
+
+    /**
+     * Uses forward slashes and a trailing separator, so that prefix checks
+     * only match whole path components.
+     */
+    static String normalize(String path) {
+        String p = path.replace('\\', '/');
+        return p.endsWith("/") ? p : p + "/";
+    }
+
+    /**
+     * One child's part of a checkout.
+     */
+    private static final class ChildCheckout {
+        final SCM scm;
+        final File subChangeLog;
+        final SCMRevisionState baseline;
+        List<SCMRevisionState> states = Collections.emptyList();
+        long millis = -1;
+        long changelogBytes = -1;
+        boolean skipped;
+        boolean duplicate;
+
+        ChildCheckout(SCM scm, File subChangeLog, SCMRevisionState baseline) {
+            this.scm = scm;
+            this.subChangeLog = subChangeLog;
+            this.baseline = baseline;
+        }
+
+        void run(Run<?, ?> build, Launcher launcher, FilePath workspace, TaskListener listener)
+                throws IOException, InterruptedException {
+            long start = System.currentTimeMillis();
+            scm.checkout(build, launcher, workspace, listener, subChangeLog, baseline);
+            millis = System.currentTimeMillis() - start;
+            if (subChangeLog != null && subChangeLog.exists()) {
+                changelogBytes = subChangeLog.length();
             }
         }
-        logWriter.write(String.format("</%s>\n", MultiSCMChangeLogParser.ROOT_XML_TAG));
-        logWriter.close();
+
+        MultiSCMTimingAction.ChildTiming timing(Map<String, Long> pollMillis) {
+            Long polled = pollMillis.get(scm.getKey());
+            return new MultiSCMTimingAction.ChildTiming(scm.getKey(), scm.getDescriptor().getDisplayName(),
+                    polled != null ? polled : -1, millis, changelogBytes);
+        }
     }
 
     @Override
     public FilePath[] getModuleRoots(FilePath workspace, AbstractBuild build) {
-        ArrayList<FilePath> paths = new ArrayList<FilePath>();
-        for(SCM scm : scms) {
-            FilePath[] p = scm.getModuleRoots(workspace, build);
-            for(FilePath p2 : p)
-                paths.add(p2);
+        return moduleRoots(workspace, build).getAll();
+    }
+
+    /**
+     * Finds the child a file in the workspace belongs to, e.g. to attribute
+     * a warning or a coverage result to a repository.
+     *
+     * @param path path of the file, absolute or relative to {@code workspace}
+     * @return the child whose module root most closely contains the file, or
+     *         null if none does
+     */
+    @CheckForNull
+    public SCM getOwner(FilePath workspace, AbstractBuild<?, ?> build, String path) {
+        return moduleRoots(workspace, build).getOwner(new FilePath(workspace, path).getRemote());
+    }
+
+    /**
+     * Module roots of the children, computed once per workspace for a build
+     * that has been checked out.
+     */
+    private ModuleRoots moduleRoots(FilePath workspace, AbstractBuild<?, ?> build) {
+        List<SCM> children = scms.toList();
+        MultiSCMBuildData data = build != null && workspace != null ? build.getAction(MultiSCMBuildData.class) : null;
+        ModuleRoots roots = data != null ? data.getModuleRoots(workspace) : null;
+        if (roots == null || !roots.isFor(children)) {
+            roots = new ModuleRoots(children, workspace, build);
+            if (data != null) {
+                data.setModuleRoots(workspace, roots);
+            }
         }
-        return paths.toArray(new FilePath[paths.size()]);
+        return roots;
     }
 
     // Only return supportsPolling when all scms do report back that
@@ -181,10 +1091,7 @@ public class MultiSCM extends SCM implements Saveable {
     @Override
     public boolean supportsPolling()
     {
-      for(SCM scm : scms) {
-        if (!scm.supportsPolling()) return false;
-      }
-      return true;
+      return childTraits().supportsPolling;
     }
 
     // When one scm does require a workspace we return true, else
@@ -192,26 +1099,92 @@ public class MultiSCM extends SCM implements Saveable {
     @Override
     public boolean requiresWorkspaceForPolling()
     {
-      for(SCM scm : scms) {
-        if (scm.requiresWorkspaceForPolling()) return true;
+      if (hybridPolling) {
+        // children that need one get a workspace of their own while polling
+        return false;
       }
-      return false;
+      return childTraits().requiresWorkspace;
     }
 
     @Override
     public ChangeLogParser createChangeLogParser() {
-        return new MultiSCMChangeLogParser(scms.toList());
+        MultiSCMChangeLogParser parser = changeLogParser;
+        if (parser == null) {
+            parser = new MultiSCMChangeLogParser(scms.toList());
+            changeLogParser = parser;
+        }
+        return parser;
     }
 
+    /**
+     * Called by {@link DescribableList} whenever the list of SCMs changes.
+     */
     public void save() throws IOException {
-        // TODO Auto-generated method stub
+        changeLogParser = null;
+        childTraits = null;
     }
 
     @Extension // this marker indicates Hudson that this is an implementation of an extension point.
     public static final class DescriptorImpl extends SCMDescriptor<MultiSCM> {
+        static final int DEFAULT_POLLING_CACHE_SIZE = 1000;
+
+        /**
+         * How long, in seconds, a child's polling result is reused by other
+         * jobs polling the same repository. 0 disables the cache.
+         */
+        private int pollingCacheTtl;
+        private int pollingCacheSize;
+        private transient volatile PollingCache pollingCache;
+        /**
+         * Most threads all jobs together use to poll, check out and parse children side by side.
+         */
+        private int maxThreads;
+
         public DescriptorImpl() {
             super(MultiSCMRepositoryBrowser.class);
-            // TODO Auto-generated constructor stub
+            load();
+            pollingCache = newPollingCache();
+            ChildTaskRunner.setMaxThreads(getMaxThreads());
+        }
+
+        public int getMaxThreads() {
+            return maxThreads > 0 ? maxThreads : ChildTaskRunner.DEFAULT_MAX_THREADS;
+        }
+
+        @DataBoundSetter
+        public void setMaxThreads(int maxThreads) {
+            this.maxThreads = Math.max(0, maxThreads);
+        }
+
+        public int getPollingCacheTtl() {
+            return pollingCacheTtl;
+        }
+
+        @DataBoundSetter
+        public void setPollingCacheTtl(int pollingCacheTtl) {
+            this.pollingCacheTtl = Math.max(0, pollingCacheTtl);
+        }
+
+        public int getPollingCacheSize() {
+            return pollingCacheSize > 0 ? pollingCacheSize : DEFAULT_POLLING_CACHE_SIZE;
+        }
+
+        @DataBoundSetter
+        public void setPollingCacheSize(int pollingCacheSize) {
+            this.pollingCacheSize = Math.max(0, pollingCacheSize);
+        }
+
+        /**
+         * @return the shared polling cache, or null if it is disabled
+         */
+        PollingCache getPollingCache() {
+            return pollingCache;
+        }
+
+        private PollingCache newPollingCache() {
+            return pollingCacheTtl > 0
+                    ? new PollingCache(TimeUnit.SECONDS.toMillis(pollingCacheTtl), getPollingCacheSize())
+                    : null;
         }
 
         public List<SCMDescriptor<?>> getApplicableSCMs(AbstractProject<?, ?> project) {
@@ -237,6 +1210,12 @@ public class MultiSCM extends SCM implements Saveable {
 
         @Override
         public boolean configure(StaplerRequest req, JSONObject formData) throws FormException {
+            setPollingCacheTtl(formData.optInt("pollingCacheTtl", 0));
+            setPollingCacheSize(formData.optInt("pollingCacheSize", 0));
+            setMaxThreads(formData.optInt("maxThreads", 0));
+            ChildTaskRunner.setMaxThreads(getMaxThreads());
+            // start over, cached answers may be older than the new TTL allows
+            pollingCache = newPollingCache();
             save();
             return super.configure(req,formData);
         }
@@ -258,11 +1237,28 @@ public class MultiSCM extends SCM implements Saveable {
             }
 
             // return list and wrap exception
+            MultiSCM multiSCM;
             try {
-                return new MultiSCM(scmList);
+                multiSCM = new MultiSCM(scmList);
             } catch (IOException ex) {
                 throw new FormException(ex, "scmList");
             }
+            readOptions(req, formData, multiSCM);
+            return multiSCM;
+        }
+
+        private static void readOptions(StaplerRequest req, JSONObject formData, MultiSCM multiSCM) {
+            multiSCM.setParallelPolling(formData.optBoolean("parallelPolling"));
+            multiSCM.setFastTrigger(formData.optBoolean("fastTrigger"));
+            multiSCM.setPollingThreads(formData.optInt("pollingThreads", 0));
+            multiSCM.setPollingTimeout(formData.optInt("pollingTimeout", 0));
+            multiSCM.setParallelCheckout(formData.optBoolean("parallelCheckout"));
+            multiSCM.setCheckoutThreads(formData.optInt("checkoutThreads", 0));
+            multiSCM.setHybridPolling(formData.optBoolean("hybridPolling"));
+            multiSCM.setIncrementalCheckout(formData.optBoolean("incrementalCheckout"));
+            multiSCM.setCompressChangelogs(formData.optBoolean("compressChangelogs"));
+            multiSCM.setCompressInBackground(formData.optBoolean("compressInBackground"));
+            multiSCM.setPollingPolicies(req.bindJSONToList(ChildPollingPolicy.class, formData.opt("pollingPolicies")));
         }
 
         private static void readItem(StaplerRequest req, JSONObject obj, List<SCM> dest) throws FormException {
@@ -0,0 +1,72 @@
+package org.jenkinsci.plugins.multiplescms;
+
+import hudson.FilePath;
+import hudson.model.InvisibleAction;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Added to a build once {@link MultiSCM} has checked it out, to hold what
+ * is derived from the children over and over again while the build is in
+ * memory. It marks that the checkout is complete, after which the
+ * children's contributions no longer change. Only which children the
+ * workspace holds is persisted.
+ */
+public class MultiSCMBuildData extends InvisibleAction {
+    /**
+     * Keys of the children the build checked out, or kept as the previous
+     * build had checked them out. Null for builds of older versions.
+     */
+    private final Set<String> checkedOut;
+    private transient volatile Map<String, String> environment;
+    private transient volatile Map<FilePath, ModuleRoots> moduleRoots;
+
+    /**
+     * @param earlier the data of an earlier checkout of the same build, or null
+     */
+    MultiSCMBuildData(MultiSCMBuildData earlier, Collection<String> checkedOut) {
+        Set<String> keys = new HashSet<String>(checkedOut);
+        if (earlier != null && earlier.checkedOut != null) {
+            keys.addAll(earlier.checkedOut);
+        }
+        this.checkedOut = keys;
+    }
+
+    /**
+     * @return whether the workspace holds the child as of this build
+     */
+    boolean isCheckedOut(String scmKey) {
+        Set<String> keys = checkedOut;
+        return keys != null && keys.contains(scmKey);
+    }
+
+    /**
+     * @return the children's merged environment variables, or null if not computed yet
+     */
+    Map<String, String> getEnvironment() {
+        return environment;
+    }
+
+    void setEnvironment(Map<String, String> environment) {
+        this.environment = environment;
+    }
+
+    /**
+     * @return the module roots cached for {@code workspace}, or null
+     */
+    ModuleRoots getModuleRoots(FilePath workspace) {
+        Map<FilePath, ModuleRoots> roots = moduleRoots;
+        return roots != null ? roots.get(workspace) : null;
+    }
+
+    synchronized void setModuleRoots(FilePath workspace, ModuleRoots roots) {
+        if (moduleRoots == null) {
+            moduleRoots = new ConcurrentHashMap<FilePath, ModuleRoots>();
+        }
+        moduleRoots.put(workspace, roots);
+    }
+}
@@ -7,36 +7,56 @@ import hudson.scm.ChangeLogSet.Entry;
 import hudson.scm.RepositoryBrowser;
 import hudson.scm.SCM;
 
+import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.zip.GZIPInputStream;
 
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
 
-import org.apache.commons.lang.StringEscapeUtils;
+import org.apache.commons.io.input.BoundedInputStream;
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
 
+/**
+ * Splits a build's changelog up among the child SCMs' own parsers.
+ *
+ * Instances are immutable once constructed and can be shared by any number of
+ * builds and threads; {@link MultiSCM} keeps one around for as long as its list
+ * of SCMs does not change.
+ */
 public class MultiSCMChangeLogParser extends ChangeLogParser {
     public static final String ROOT_XML_TAG = "multi-scm-log";
     public static final String SUB_LOG_TAG = "sub-log";
+    public static final String MANIFEST_XML_TAG = "multi-scm-manifest";
 
     private final Map<String, ChangeLogParser> scmLogParsers;
     private final Map<String, String> scmDisplayNames;
     private final Map<String, RepositoryBrowser<?>> scmRepositoryBrowsers;
 
     public MultiSCMChangeLogParser(List<SCM> scms) {
-        scmLogParsers = new HashMap<String, ChangeLogParser>();
-        scmDisplayNames = new HashMap<String, String>();
-        scmRepositoryBrowsers = new HashMap<String, RepositoryBrowser<?>>();
+        // in configured order, which is also the order changes are shown in
+        Map<String, ChangeLogParser> scmLogParsers = new LinkedHashMap<String, ChangeLogParser>();
+        Map<String, String> scmDisplayNames = new HashMap<String, String>();
+        Map<String, RepositoryBrowser<?>> scmRepositoryBrowsers = new HashMap<String, RepositoryBrowser<?>>();
 
         for(SCM scm : scms) {
             String key = scm.getKey();
@@ -50,35 +70,61 @@ public class MultiSCMChangeLogParser extends ChangeLogParser {
                 scmRepositoryBrowsers.put(key, scm.getBrowser());
             }
         }
+
+        this.scmLogParsers = Collections.unmodifiableMap(scmLogParsers);
+        this.scmDisplayNames = Collections.unmodifiableMap(scmDisplayNames);
+        this.scmRepositoryBrowsers = Collections.unmodifiableMap(scmRepositoryBrowsers);
+    }
+
+    /**
+     * For benchmarks and tests that have no SCM descriptors to ask.
+     *
+     * @param scmLogParsers child parsers by SCM key, in configured order
+     */
+    MultiSCMChangeLogParser(Map<String, ChangeLogParser> scmLogParsers, Map<String, String> scmDisplayNames) {
+        this.scmLogParsers = Collections.unmodifiableMap(new LinkedHashMap<String, ChangeLogParser>(scmLogParsers));
+        this.scmDisplayNames = Collections.unmodifiableMap(new HashMap<String, String>(scmDisplayNames));
+        this.scmRepositoryBrowsers = Collections.emptyMap();
     }
 
+    /**
+     * Shared by all parses, see {@link #newSAXParser()}. The changelog is our
+     * own plain XML, there is no DTD or schema to validate against.
+     */
+    private static final SAXParserFactory PARSER_FACTORY = SAXParserFactory.newInstance();
+
     private class LogSplitter extends DefaultHandler {
 
         private final MultiSCMChangeLogSet changeLogs;
         private final AbstractBuild build;
-        private final File tempFile;
+        private final List<File> extracted = new ArrayList<File>();
+        private File tempFile;
         private String scmClass;
-        private StringBuffer buffer;
+        private Writer subLog;
+        private boolean leadingWhitespace;
 
-        public LogSplitter(AbstractBuild build, String tempFilePath) {
-            changeLogs = new MultiSCMChangeLogSet(build);
-            this.tempFile= new File(tempFilePath);
+        public LogSplitter(AbstractBuild build) {
+            changeLogs = newChangeLogSet(build);
             this.build = build;
         }
 
         @Override
         public void characters(char[] data, int startIndex, int length)
                 throws SAXException {
-                if(buffer != null) {
+            if(subLog != null) {
+                if (leadingWhitespace) {
                     while(length > 0 && Character.isWhitespace(data[startIndex])) {
                         startIndex += 1;
                         length -= 1;
                     }
-                    for (int i = 0; i < length; i++) {
-                        buffer.append(data[startIndex + i]);
-                    }
+                    leadingWhitespace = length == 0;
                 }
-
+                try {
+                    subLog.write(data, startIndex, length);
+                } catch (IOException e) {
+                    throw new SAXException("could not write temp changelog file", e);
+                }
+            }
         }
 
         @Override
@@ -86,7 +132,15 @@ public class MultiSCMChangeLogParser extends ChangeLogParser {
                 Attributes attrs) throws SAXException {
             if(qName.compareTo(SUB_LOG_TAG) == 0) {
                 scmClass = attrs.getValue("scm");
-                buffer = new StringBuffer();
+                leadingWhitespace = true;
+                try {
+                    tempFile = createTempFile();
+                    //un-escaping the XMl so it is written to the temp file correctly
+                    subLog = new XmlUnescapingWriter(new BufferedWriter(new OutputStreamWriter(
+                            new FileOutputStream(tempFile), StandardCharsets.UTF_8)));
+                } catch (IOException e) {
+                    throw new SAXException("could not create temp changelog file", e);
+                }
             }
         }
 
@@ -96,48 +150,240 @@ public class MultiSCMChangeLogParser extends ChangeLogParser {
 
             if(qName.compareTo(SUB_LOG_TAG) == 0) {
                 try {
-                    OutputStreamWriter outputStream = new OutputStreamWriter(new FileOutputStream(tempFile));
-                    //un-escaping the XMl so it is written to the temp file correctly
-                    String data = StringEscapeUtils.unescapeXml(buffer.toString());
-                    outputStream.write(data);
-                    outputStream.close();
-                    buffer = null;
-                    ChangeLogParser parser = scmLogParsers.get(scmClass);
-
-                    /*
-                     * Due to XSTREAM serialization scmRepositoryBrowsers may be null.
-                     */
-                    RepositoryBrowser<?> browser = null;
-                    if (scmRepositoryBrowsers != null) {
-                        browser = scmRepositoryBrowsers.get(scmClass);
-                    }
-                    if(parser != null) {
-                        ChangeLogSet<? extends ChangeLogSet.Entry> cls;
-                        if (browser != null) {
-                            cls = parser.parse(build, browser, tempFile);
-                        } else {
-                            cls = parser.parse(build, tempFile);
-                        }
-                        changeLogs.add(scmClass, scmDisplayNames.get(scmClass), cls);
-
-                    }
-                } catch (RuntimeException e) {
-                    throw new SAXException("could not parse changelog file", e);
-                } catch (FileNotFoundException e) {
-                    throw new SAXException("could not create temp changelog file", e);
+                    subLog.close();
+                    subLog = null;
                 } catch (IOException e) {
                     throw new SAXException("could not close temp changelog file", e);
                 }
+                if (scmLogParsers.containsKey(scmClass)) {
+                    // parsed once the whole file is split, together with the other SCMs'
+                    extracted.add(tempFile);
+                    changeLogs.addLazily(scmClass, scmDisplayNames.get(scmClass),
+                            new ExtractedSubLog(build, scmClass, tempFile));
+                } else {
+                    tempFile.delete();
+                }
+                tempFile = null;
+            }
+        }
 
-
+        /**
+         * Deletes the extracted sub-logs, and releases the temp file handle
+         * if parsing stopped half way through one.
+         */
+        void abort() {
+            if (subLog != null) {
+                try {
+                    subLog.close();
+                } catch (IOException e) {
+                    // already failing
+                }
+                subLog = null;
             }
+            if (tempFile != null) {
+                tempFile.delete();
+                tempFile = null;
+            }
+            for (File file : extracted) {
+                file.delete();
+            }
+            extracted.clear();
         }
 
+        /**
+         * Parses the extracted sub-logs while their temp files still exist.
+         */
         public ChangeLogSet<? extends Entry> getChangeLogSets() {
+            changeLogs.loadAll();
             return changeLogs;
         }
     }
 
+    /**
+     * Every extracted sub-log gets a file of its own, so that the same
+     * changelog can be parsed by several threads at once.
+     */
+    private static File createTempFile() throws IOException {
+        return File.createTempFile("multiscm-changelog", ".xml");
+    }
+
+    static SAXParser newSAXParser() throws SAXException {
+        // SAXParser instances are not thread safe, the factory is only guaranteed
+        // to be when access to it is serialized
+        synchronized (PARSER_FACTORY) {
+            try {
+                return PARSER_FACTORY.newSAXParser();
+            } catch (ParserConfigurationException e) {
+                throw new SAXException("Could not create parser", e);
+            }
+        }
+    }
+
+    /**
+     * A sub-log {@link LogSplitter} has already extracted into a temp file.
+     */
+    private class ExtractedSubLog implements MultiSCMChangeLogSet.SubLogLoader {
+        private final AbstractBuild build;
+        private final String scmKey;
+        private final File tempFile;
+
+        ExtractedSubLog(AbstractBuild build, String scmKey, File tempFile) {
+            this.build = build;
+            this.scmKey = scmKey;
+            this.tempFile = tempFile;
+        }
+
+        public ChangeLogSet<? extends Entry> load() throws IOException, SAXException {
+            return parseSubLog(build, scmKey, tempFile);
+        }
+    }
+
+    /**
+     * Extracts one sub-log from the aggregated changelog and hands it to the
+     * child's parser.
+     */
+    private class SubLogRange implements MultiSCMChangeLogSet.SubLogLoader {
+        private final AbstractBuild build;
+        private final File changelogFile;
+        private final ChangeLogIndex.Range range;
+
+        SubLogRange(AbstractBuild build, File changelogFile, ChangeLogIndex.Range range) {
+            this.build = build;
+            this.changelogFile = changelogFile;
+            this.range = range;
+        }
+
+        public ChangeLogSet<? extends Entry> load() throws IOException, SAXException {
+            File tempFile = createTempFile();
+            try {
+                extract(tempFile);
+                return parseSubLog(build, range.scmKey, tempFile);
+            } finally {
+                tempFile.delete();
+            }
+        }
+
+        private void extract(File tempFile) throws IOException {
+            InputStream in = new FileInputStream(changelogFile);
+            try {
+                long skipped = 0;
+                while (skipped < range.offset) {
+                    long n = in.skip(range.offset - skipped);
+                    if (n <= 0) {
+                        throw new IOException(changelogFile + " was truncated");
+                    }
+                    skipped += n;
+                }
+                Reader reader = new InputStreamReader(new BoundedInputStream(in, range.length), StandardCharsets.UTF_8);
+                //un-escaping the XMl so it is written to the temp file correctly
+                Writer out = new XmlUnescapingWriter(new BufferedWriter(new OutputStreamWriter(
+                        new FileOutputStream(tempFile), StandardCharsets.UTF_8)));
+                try {
+                    char[] chunk = new char[MultiSCMChangeLogWriter.BUFFER_SIZE];
+                    boolean leadingWhitespace = true;
+                    int n;
+                    while ((n = reader.read(chunk)) != -1) {
+                        int start = 0;
+                        if (leadingWhitespace) {
+                            while (start < n && Character.isWhitespace(chunk[start])) {
+                                start++;
+                            }
+                            leadingWhitespace = start == n;
+                        }
+                        out.write(chunk, start, n - start);
+                    }
+                } finally {
+                    out.close();
+                }
+            } finally {
+                in.close();
+            }
+        }
+    }
+
+    /**
+     * A child changelog kept in its own file, listed in a manifest.
+     */
+    private class SubLogFile implements MultiSCMChangeLogSet.SubLogLoader {
+        private final AbstractBuild build;
+        private final ChangeLogManifest.SubLog subLog;
+
+        SubLogFile(AbstractBuild build, ChangeLogManifest.SubLog subLog) {
+            this.build = build;
+            this.subLog = subLog;
+        }
+
+        public ChangeLogSet<? extends Entry> load() throws IOException, SAXException {
+            if (!subLog.compressed) {
+                return parseSubLog(build, subLog.scmKey, subLog.file);
+            }
+            File uncompressed = MultiSCMChangeLogWriter.uncompressedFile(subLog.file);
+            ChangeLogCompression.await(uncompressed);
+            if (uncompressed.exists()) {
+                // compression never finished, so the original is the complete one
+                return parseSubLog(build, subLog.scmKey, uncompressed);
+            }
+            // child parsers want a file of their own
+            File tempFile = createTempFile();
+            try {
+                decompress(tempFile);
+                return parseSubLog(build, subLog.scmKey, tempFile);
+            } finally {
+                tempFile.delete();
+            }
+        }
+
+        private void decompress(File tempFile) throws IOException {
+            InputStream in = new GZIPInputStream(new FileInputStream(subLog.file), MultiSCMChangeLogWriter.BUFFER_SIZE);
+            try {
+                OutputStream out = new FileOutputStream(tempFile);
+                try {
+                    byte[] chunk = new byte[MultiSCMChangeLogWriter.BUFFER_SIZE];
+                    int n;
+                    while ((n = in.read(chunk)) != -1) {
+                        out.write(chunk, 0, n);
+                    }
+                } finally {
+                    out.close();
+                }
+            } finally {
+                in.close();
+            }
+        }
+    }
+
+    private ChangeLogSet<? extends Entry> parseSubLog(AbstractBuild build, String scmKey, File subLog)
+            throws IOException, SAXException {
+        ChangeLogParser parser = scmLogParsers.get(scmKey);
+        /*
+         * Due to XSTREAM serialization scmRepositoryBrowsers may be null.
+         */
+        RepositoryBrowser<?> browser = null;
+        if (scmRepositoryBrowsers != null) {
+            browser = scmRepositoryBrowsers.get(scmKey);
+        }
+        long start = System.currentTimeMillis();
+        ChangeLogSet<? extends Entry> changes;
+        if (browser != null) {
+            changes = parser.parse(build, browser, subLog);
+        } else {
+            changes = parser.parse(build, subLog);
+        }
+        MultiSCMTimingAction timings = build != null ? build.getAction(MultiSCMTimingAction.class) : null;
+        if (timings != null) {
+            timings.recordParse(scmKey, System.currentTimeMillis() - start);
+        }
+        return changes;
+    }
+
+    private MultiSCMChangeLogSet newChangeLogSet(AbstractBuild build) {
+        MultiSCMChangeLogSet changeLogs = new MultiSCMChangeLogSet(build);
+        for (String key : scmLogParsers.keySet()) {
+            changeLogs.declare(key, scmDisplayNames.get(key));
+        }
+        return changeLogs;
+    }
+
     @Override
     public ChangeLogSet<? extends Entry> parse(AbstractBuild build, File changelogFile)
         throws IOException, SAXException {
@@ -145,17 +391,39 @@ public class MultiSCMChangeLogParser extends ChangeLogParser {
         if(scmLogParsers == null)
             return ChangeLogSet.createEmpty(build);
 
-          SAXParserFactory factory = SAXParserFactory.newInstance();
-          factory.setValidating(true);
-          SAXParser parser;
-        try {
-            parser = factory.newSAXParser();
-        } catch (ParserConfigurationException e) {
-            throw new SAXException("Could not create parser", e);
+        ChangeLogManifest manifest = ChangeLogManifest.read(changelogFile);
+        if (manifest != null) {
+            // Child changelogs are parsed straight from their own files, when first needed
+            MultiSCMChangeLogSet changeLogs = newChangeLogSet(build);
+            for (ChangeLogManifest.SubLog subLog : manifest.getSubLogs()) {
+                if (scmLogParsers.containsKey(subLog.scmKey)) {
+                    changeLogs.addLazily(subLog.scmKey, scmDisplayNames.get(subLog.scmKey),
+                            new SubLogFile(build, subLog));
+                }
+            }
+            return changeLogs;
+        }
+
+        // Builds from before 0.9 have every child changelog escaped into this one file
+        ChangeLogIndex index = ChangeLogIndex.read(changelogFile);
+        if (index != null) {
+            // Only remember where each SCM's changes are, they are parsed when first needed
+            MultiSCMChangeLogSet changeLogs = newChangeLogSet(build);
+            for (ChangeLogIndex.Range range : index.getRanges()) {
+                if (scmLogParsers.containsKey(range.scmKey)) {
+                    changeLogs.addLazily(range.scmKey, scmDisplayNames.get(range.scmKey),
+                            new SubLogRange(build, changelogFile, range));
+                }
+            }
+            return changeLogs;
         }
 
-        LogSplitter splitter = new LogSplitter(build, changelogFile.getPath() + ".temp2");
-        parser.parse(changelogFile, splitter);
-        return splitter.getChangeLogSets();
+        LogSplitter splitter = new LogSplitter(build);
+        try {
+            newSAXParser().parse(changelogFile, splitter);
+            return splitter.getChangeLogSets();
+        } finally {
+            splitter.abort();
+        }
     }
 }
@@ -1,10 +1,20 @@
 package org.jenkinsci.plugins.multiplescms;
 
+import java.io.IOException;
+import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import hudson.model.AbstractBuild;
 import hudson.scm.RepositoryBrowser;
@@ -13,20 +23,65 @@ import hudson.scm.ChangeLogSet.Entry;
 import java.util.HashSet;
 import java.util.Set;
 
+import net.sf.json.JSONObject;
+
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+import org.xml.sax.SAXException;
+
 public class MultiSCMChangeLogSet extends ChangeLogSet<Entry> {
-    private final HashMap<String, ChangeLogSetWrapper> changes;
+    private static final Logger LOGGER = Logger.getLogger(MultiSCMChangeLogSet.class.getName());
+
+    /**
+     * How many changes of one SCM the changes page and the build summary show at a time.
+     */
+    public static final int PAGE_SIZE = 100;
+
+    /**
+     * Most changes {@link #doEntries} returns per request.
+     */
+    static final int MAX_ENTRIES_PER_REQUEST = 1000;
+
+    /**
+     * Most SCMs whose changes are parsed at once when all of them are needed.
+     */
+    static final int PARSE_THREADS = 4;
+
+    private final Map<String, Section> changes;
     private final Set<String> kinds;
 
     protected MultiSCMChangeLogSet(AbstractBuild<?, ?> build) {
         super(build);
-        changes = new HashMap<String, ChangeLogSetWrapper>();
+        changes = new LinkedHashMap<String, Section>();
         kinds = new HashSet<String>();
     }
 
+    /**
+     * Parses one child's part of the changelog on demand.
+     */
+    interface SubLogLoader {
+        ChangeLogSet<? extends Entry> load() throws IOException, SAXException;
+    }
+
+    /**
+     * Everything known about one SCM: the sub-logs not parsed yet, and the
+     * wrapper holding the changes of those that were.
+     */
+    private static final class Section {
+        final String friendlyName;
+        final List<SubLogLoader> pending = new ArrayList<SubLogLoader>();
+        ChangeLogSetWrapper wrapper;
+
+        Section(String friendlyName) {
+            this.friendlyName = friendlyName;
+        }
+    }
+
     public static class ChangeLogSetWrapper extends ChangeLogSet<Entry> {
         private List<Entry> logs;
         private Class clazz;
         private String friendlyName;
+        private String error;
 
         public ChangeLogSetWrapper(AbstractBuild build, String friendlyName, Class handler) {
             super(build);
@@ -58,6 +113,40 @@ public class MultiSCMChangeLogSet extends ChangeLogSet<Entry> {
             return logs;
         }
 
+        /**
+         * @return why (some of) the SCM's changes could not be read, or null
+         */
+        public String getError() {
+            return error;
+        }
+
+        public int getSize() {
+            return logs.size();
+        }
+
+        public int getPageCount() {
+            return Math.max(1, (logs.size() + PAGE_SIZE - 1) / PAGE_SIZE);
+        }
+
+        /**
+         * Only the page is rendered, but the SCM's changes are parsed in full
+         * first: a child's changelog parser has no way to read only some of them.
+         *
+         * @return the {@code page}th {@link #PAGE_SIZE} changes, counting from 0,
+         *         as a wrapper of their own that views can render like this one
+         */
+        public ChangeLogSetWrapper getPage(int page) {
+            int from = Math.min(Math.max(page, 0) * PAGE_SIZE, logs.size());
+            int to = Math.min(from + PAGE_SIZE, logs.size());
+            if (from == 0 && to == logs.size()) {
+                return this;
+            }
+            ChangeLogSetWrapper slice = new ChangeLogSetWrapper(build, getBrowser(), friendlyName, clazz);
+            slice.logs = logs.subList(from, to);
+            slice.error = error;
+            return slice;
+        }
+
         public void addChanges(ChangeLogSet<? extends Entry> cls) {
             for(Entry e : cls)
                 logs.add(e);
@@ -73,6 +162,10 @@ public class MultiSCMChangeLogSet extends ChangeLogSet<Entry> {
         }
     }
 
+    /**
+     * Walks the SCMs one after the other, parsing each one's changes only
+     * when the iteration reaches it.
+     */
     private static class MultiSCMChangeLogSetIterator implements Iterator<Entry> {
 
         MultiSCMChangeLogSet set;
@@ -82,20 +175,23 @@ public class MultiSCMChangeLogSet extends ChangeLogSet<Entry> {
 
         public MultiSCMChangeLogSetIterator(MultiSCMChangeLogSet set) {
             this.set = set;
-            scmIter = set.changes.keySet().iterator();
+            scmIter = set.getScmKeys().iterator();
         }
 
         public boolean hasNext() {
-            if(logIter == null || !logIter.hasNext())
-                return scmIter.hasNext();
+            while(logIter == null || !logIter.hasNext()) {
+                if (!scmIter.hasNext())
+                    return false;
+                currentScm = scmIter.next();
+                ChangeLogSetWrapper wrapper = set.load(currentScm);
+                logIter = wrapper != null ? wrapper.logs.iterator() : null;
+            }
             return true;
         }
 
         public Entry next() {
-            if(logIter == null || !logIter.hasNext()) {
-                currentScm = scmIter.next();
-                logIter = set.changes.get(currentScm).logs.iterator();
-            }
+            if(!hasNext())
+                throw new NoSuchElementException();
             return logIter.next();
         }
 
@@ -104,32 +200,351 @@ public class MultiSCMChangeLogSet extends ChangeLogSet<Entry> {
         }
     }
 
+    /**
+     * Merges the SCMs' changes by {@link Entry#getTimestamp()}. Each SCM's
+     * changes are sorted on their own and then merged on the fly, so no
+     * combined list of all entries is ever built. Entries with the same
+     * timestamp come in configured SCM order; entries without a timestamp
+     * count as the oldest.
+     */
+    private static class TimeOrderedIterator implements Iterator<Entry> {
+
+        /**
+         * Position in one SCM's sorted changes.
+         */
+        private static final class Cursor {
+            final int scmIndex;
+            final Iterator<Entry> entries;
+            Entry head;
+
+            Cursor(int scmIndex, Iterator<Entry> entries) {
+                this.scmIndex = scmIndex;
+                this.entries = entries;
+                this.head = entries.next();
+            }
+        }
+
+        private final PriorityQueue<Cursor> queue;
+
+        TimeOrderedIterator(List<ChangeLogSetWrapper> wrappers, final boolean newestFirst) {
+            final Comparator<Entry> byTime = newestFirst ? Collections.reverseOrder(BY_TIMESTAMP) : BY_TIMESTAMP;
+            queue = new PriorityQueue<Cursor>(Math.max(1, wrappers.size()), new Comparator<Cursor>() {
+                public int compare(Cursor a, Cursor b) {
+                    int c = byTime.compare(a.head, b.head);
+                    return c != 0 ? c : Integer.compare(a.scmIndex, b.scmIndex);
+                }
+            });
+            for (int i = 0; i < wrappers.size(); i++) {
+                List<Entry> sorted = new ArrayList<Entry>(wrappers.get(i).logs);
+                Collections.sort(sorted, byTime);
+                if (!sorted.isEmpty()) {
+                    queue.add(new Cursor(i, sorted.iterator()));
+                }
+            }
+        }
+
+        public boolean hasNext() {
+            return !queue.isEmpty();
+        }
+
+        public Entry next() {
+            Cursor cursor = queue.poll();
+            if (cursor == null)
+                throw new NoSuchElementException();
+            Entry e = cursor.head;
+            if (cursor.entries.hasNext()) {
+                cursor.head = cursor.entries.next();
+                queue.add(cursor);
+            }
+            return e;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException("Cannot remove changeset items");
+        }
+    }
+
+    private static final Comparator<Entry> BY_TIMESTAMP = new Comparator<Entry>() {
+        public int compare(Entry a, Entry b) {
+            return Long.compare(a.getTimestamp(), b.getTimestamp());
+        }
+    };
+
+    /**
+     * Iterates SCM by SCM, in configured order.
+     */
     public Iterator<Entry> iterator() {
         return new MultiSCMChangeLogSetIterator(this);
     }
 
+    /**
+     * All changes of all SCMs interleaved by their timestamp.
+     *
+     * @param newestFirst whether to start with the most recent change
+     */
+    public Iterable<Entry> getEntriesByTimestamp(final boolean newestFirst) {
+        final List<ChangeLogSetWrapper> wrappers = new ArrayList<ChangeLogSetWrapper>(getChangeLogSetWrappers());
+        return new Iterable<Entry>() {
+            public Iterator<Entry> iterator() {
+                return new TimeOrderedIterator(wrappers, newestFirst);
+            }
+        };
+    }
+
     @Override
     public boolean isEmptySet() {
-        return changes.isEmpty();
+        // stops parsing at the first SCM that has changes
+        return !iterator().hasNext();
     }
 
-    public void add(String scmClass, String scmFriendlyName, ChangeLogSet<? extends Entry> cls) {
+    public synchronized void add(String scmClass, String scmFriendlyName, ChangeLogSet<? extends Entry> cls) {
+        Section section = section(scmClass, scmFriendlyName);
         if(!cls.isEmptySet()) {
-            ChangeLogSetWrapper wrapper = changes.get(scmClass);
-            if(wrapper == null) {
-                wrapper = new ChangeLogSetWrapper(build, cls.getBrowser(), scmFriendlyName, cls.getClass());
-                changes.put(scmClass, wrapper);
+            if(section.wrapper == null || section.wrapper.clazz == null) {
+                // possibly replacing the placeholder of a sub-log that failed
+                ChangeLogSetWrapper failed = section.wrapper;
+                section.wrapper = new ChangeLogSetWrapper(build, cls.getBrowser(), scmFriendlyName, cls.getClass());
+                if (failed != null) {
+                    section.wrapper.error = failed.error;
+                }
             }
-            wrapper.addChanges(cls);
+            section.wrapper.addChanges(cls);
         }
         kinds.add(cls.getKind());
     }
 
+    /**
+     * Records that one of the SCM's sub-logs could not be parsed. The SCM
+     * still gets a wrapper, so that views can say so in its place.
+     */
+    synchronized void fail(String scmClass, String scmFriendlyName, Throwable cause) {
+        LOGGER.log(Level.WARNING, "Failed to parse changelog of " + scmClass + " in " + build, cause);
+        Section section = section(scmClass, scmFriendlyName);
+        if (section.wrapper == null) {
+            section.wrapper = new ChangeLogSetWrapper(build, scmFriendlyName, null);
+        }
+        String message = cause.getMessage() != null ? cause.getMessage() : cause.toString();
+        String error = section.wrapper.error;
+        section.wrapper.error = error == null ? message : error + "; " + message;
+    }
+
+    /**
+     * Reserves the SCM's place in the order of SCMs, whether or not it turns
+     * out to have any changes.
+     */
+    synchronized void declare(String scmClass, String scmFriendlyName) {
+        section(scmClass, scmFriendlyName);
+    }
+
+    /**
+     * Registers a sub-log that is only parsed once its SCM's changes are asked for.
+     */
+    synchronized void addLazily(String scmClass, String scmFriendlyName, SubLogLoader loader) {
+        section(scmClass, scmFriendlyName).pending.add(loader);
+    }
+
+    private Section section(String scmClass, String scmFriendlyName) {
+        Section section = changes.get(scmClass);
+        if (section == null) {
+            section = new Section(scmFriendlyName);
+            changes.put(scmClass, section);
+        }
+        return section;
+    }
+
+    private synchronized List<String> getScmKeys() {
+        return new ArrayList<String>(changes.keySet());
+    }
+
+    /**
+     * Parses whatever is still pending for the given SCM.
+     *
+     * @return the SCM's changes, or null if it has none
+     */
+    private synchronized ChangeLogSetWrapper load(String scmClass) {
+        Section section = changes.get(scmClass);
+        while (!section.pending.isEmpty()) {
+            SubLogLoader loader = section.pending.remove(0);
+            try {
+                add(scmClass, section.friendlyName, loader.load());
+            } catch (IOException e) {
+                fail(scmClass, section.friendlyName, e);
+            } catch (SAXException e) {
+                fail(scmClass, section.friendlyName, e);
+            } catch (RuntimeException e) {
+                fail(scmClass, section.friendlyName, e);
+            }
+        }
+        return section.wrapper;
+    }
+
+    /**
+     * Parses everything still pending, several SCMs at once, and merges the
+     * results in configured order.
+     */
+    synchronized void loadAll() {
+        final List<String> keys = new ArrayList<String>();
+        final List<SubLogLoader> loaders = new ArrayList<SubLogLoader>();
+        for (Map.Entry<String, Section> e : changes.entrySet()) {
+            for (SubLogLoader loader : e.getValue().pending) {
+                keys.add(e.getKey());
+                loaders.add(loader);
+            }
+        }
+        if (loaders.size() < 2) {
+            // nothing to gain from a pool
+            for (String scmClass : keys) {
+                load(scmClass);
+            }
+            return;
+        }
+        List<Callable<ChangeLogSet<? extends Entry>>> tasks = new ArrayList<Callable<ChangeLogSet<? extends Entry>>>();
+        for (final SubLogLoader loader : loaders) {
+            tasks.add(new Callable<ChangeLogSet<? extends Entry>>() {
+                public ChangeLogSet<? extends Entry> call() throws Exception {
+                    return loader.load();
+                }
+            });
+        }
+        List<ChildTaskRunner.Outcome<ChangeLogSet<? extends Entry>>> outcomes;
+        try {
+            outcomes = new ChildTaskRunner("MultiSCM changelog " + (build != null ? build.getFullDisplayName() : ""),
+                    PARSE_THREADS, 0).invokeAll(tasks);
+        } catch (InterruptedException e) {
+            // leave everything pending, to be parsed by whoever asks next
+            Thread.currentThread().interrupt();
+            return;
+        }
+        for (Section section : changes.values()) {
+            section.pending.clear();
+        }
+        for (int i = 0; i < outcomes.size(); i++) {
+            String scmClass = keys.get(i);
+            String friendlyName = changes.get(scmClass).friendlyName;
+            ChildTaskRunner.Outcome<ChangeLogSet<? extends Entry>> outcome = outcomes.get(i);
+            if (outcome.isSuccess()) {
+                add(scmClass, friendlyName, outcome.getValue());
+            } else {
+                fail(scmClass, friendlyName, outcome.getFailure());
+            }
+        }
+    }
+
     public Collection<ChangeLogSetWrapper> getChangeLogSetWrappers() {
-        return changes.values();
+        loadAll();
+        List<ChangeLogSetWrapper> wrappers = new ArrayList<ChangeLogSetWrapper>();
+        for (String scmClass : getScmKeys()) {
+            ChangeLogSetWrapper wrapper = load(scmClass);
+            if (wrapper != null) {
+                wrappers.add(wrapper);
+            }
+        }
+        return wrappers;
+    }
+
+    public int getPageSize() {
+        return PAGE_SIZE;
+    }
+
+    /**
+     * @return the page of the {@code section}th SCM's changes asked for by
+     *         the {@code section} and {@code page} query parameters, 0 for the
+     *         other SCMs, and the last one for pages past the end
+     */
+    public int getRequestedPage(StaplerRequest req, int section, ChangeLogSetWrapper wrapper) {
+        if (!String.valueOf(section).equals(req.getParameter("section"))) {
+            return 0;
+        }
+        int page = parseInt(req.getParameter("page"), 0);
+        return Math.min(Math.max(0, page), wrapper.getPageCount() - 1);
+    }
+
+    /**
+     * Lists changes as JSON, SCM by SCM in configured order, starting at the
+     * {@code offset}th and at most {@code limit} of them, e.g.
+     * {@code .../changeSet/entries?offset=200&limit=100}. Only the SCMs the
+     * requested changes belong to are parsed, and entries are written out
+     * as they are read:
+     * <pre>
+     * {"entries":[{"scm":"...","commitId":"...","author":"...","timestamp":0,"msg":"...","paths":[...]}, ...],
+     *  "next":300}
+     * </pre>
+     * {@code next} is the offset to continue from, null after the last change.
+     */
+    public void doEntries(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        int offset = Math.max(0, parseInt(req.getParameter("offset"), 0));
+        int limit = Math.min(Math.max(1, parseInt(req.getParameter("limit"), PAGE_SIZE)), MAX_ENTRIES_PER_REQUEST);
+
+        rsp.setContentType("application/json;charset=UTF-8");
+        PrintWriter out = rsp.getWriter();
+        out.write("{\"entries\":[");
+        int skip = offset;
+        int written = 0;
+        boolean more = false;
+        for (String scmClass : getScmKeys()) {
+            if (written == limit) {
+                // one more change anywhere means there is a next page
+                ChangeLogSetWrapper wrapper = load(scmClass);
+                if (wrapper != null && wrapper.getSize() > skip) {
+                    more = true;
+                    break;
+                }
+                continue;
+            }
+            ChangeLogSetWrapper wrapper = load(scmClass);
+            if (wrapper == null) {
+                continue;
+            }
+            List<Entry> logs = wrapper.getLogs();
+            if (skip >= logs.size()) {
+                skip -= logs.size();
+                continue;
+            }
+            int end = Math.min(logs.size(), skip + limit - written);
+            for (int i = skip; i < end; i++) {
+                if (written > 0) {
+                    out.write(',');
+                }
+                out.write(toJSON(wrapper.getName(), logs.get(i)).toString());
+                written++;
+            }
+            more = end < logs.size();
+            skip = 0;
+            if (more) {
+                break;
+            }
+        }
+        out.write("],\"next\":");
+        out.write(more ? String.valueOf(offset + written) : "null");
+        out.write("}");
+        out.flush();
+    }
+
+    private static JSONObject toJSON(String scm, Entry entry) {
+        JSONObject json = new JSONObject();
+        json.element("scm", scm);
+        json.element("commitId", entry.getCommitId());
+        json.element("author", entry.getAuthor() != null ? entry.getAuthor().getFullName() : null);
+        json.element("timestamp", entry.getTimestamp());
+        json.element("msg", entry.getMsg());
+        json.element("paths", new ArrayList<String>(entry.getAffectedPaths()));
+        return json;
+    }
+
+    private static int parseInt(String value, int defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
     }
 
-    @Override public String getKind() {
+    @Override public synchronized String getKind() {
+        // the kind of an SCM is only known once its changes are parsed
+        getChangeLogSetWrappers();
         if (kinds.size() == 1) {
             return kinds.iterator().next();
         } else {
@@ -0,0 +1,155 @@
+package org.jenkinsci.plugins.multiplescms;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes the changelog manifest read by {@link MultiSCMChangeLogParser}.
+ *
+ * Child changelogs are not copied anywhere: each one stays in the file the
+ * child SCM wrote it to, next to the manifest, and the manifest only records
+ * which SCM it belongs to:
+ * <pre>
+ * &lt;multi-scm-manifest&gt;
+ * &lt;sub-log scm="key" file="changelog.xml.0"/&gt;
+ * &lt;/multi-scm-manifest&gt;
+ * </pre>
+ * A child changelog may be gzipped, which the entry then says with a
+ * {@code compression="gzip"} attribute.
+ * Builds recorded by older versions of the plugin have all child changelogs
+ * escaped into a single {@code multi-scm-log} file instead; see
+ * {@link ChangeLogIndex}.
+ */
+final class MultiSCMChangeLogWriter implements Closeable {
+    static final int BUFFER_SIZE = 8192;
+
+    /** Value of the {@code compression} attribute of a gzipped child changelog. */
+    static final String GZIP = "gzip";
+
+    private final File changelogFile;
+    private final Writer out;
+
+    MultiSCMChangeLogWriter(File changelogFile) throws IOException {
+        this.changelogFile = changelogFile;
+        out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(changelogFile), StandardCharsets.UTF_8), BUFFER_SIZE);
+        out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        out.write("<" + MultiSCMChangeLogParser.MANIFEST_XML_TAG + ">\n");
+    }
+
+    /**
+     * Name of the file the changelog of the {@code index}th child is kept in.
+     */
+    static File subLogFile(File changelogFile, int index) {
+        return new File(changelogFile.getPath() + "." + index);
+    }
+
+    /**
+     * Records the changelog {@code subLog} written by the child SCM with the given key.
+     * It has to be in the same directory as the manifest.
+     */
+    void addSubLog(String scmKey, File subLog) throws IOException {
+        addSubLog(scmKey, subLog, false);
+    }
+
+    /**
+     * @param compressed whether {@code subLog} was written by {@link #compress(File)}
+     */
+    void addSubLog(String scmKey, File subLog, boolean compressed) throws IOException {
+        if (!changelogFile.getAbsoluteFile().getParentFile().equals(subLog.getAbsoluteFile().getParentFile())) {
+            throw new IllegalArgumentException(subLog + " is not next to " + changelogFile);
+        }
+        out.write("<" + MultiSCMChangeLogParser.SUB_LOG_TAG + " scm=\"");
+        escape(scmKey);
+        out.write("\" file=\"");
+        escape(subLog.getName());
+        if (compressed) {
+            out.write("\" compression=\"" + GZIP);
+        }
+        out.write("\"/>\n");
+    }
+
+    /**
+     * Name of the file {@link #compress(File)} writes {@code subLog} to.
+     */
+    static File compressedFile(File subLog) {
+        return new File(subLog.getPath() + ".gz");
+    }
+
+    /**
+     * Name of the file {@code compressed} was written by {@link #compress(File)} from.
+     */
+    static File uncompressedFile(File compressed) {
+        String path = compressed.getPath();
+        return new File(path.endsWith(".gz") ? path.substring(0, path.length() - 3) : path);
+    }
+
+    /**
+     * Gzips a child changelog next to itself and deletes the original.
+     *
+     * @return the file now holding the changelog: the compressed one, or
+     *         {@code subLog} itself if it could not be deleted
+     */
+    static File compress(File subLog) throws IOException {
+        File compressed = compressedFile(subLog);
+        InputStream in = new FileInputStream(subLog);
+        try {
+            OutputStream out = new GZIPOutputStream(new FileOutputStream(compressed), BUFFER_SIZE);
+            try {
+                byte[] chunk = new byte[BUFFER_SIZE];
+                int n;
+                while ((n = in.read(chunk)) != -1) {
+                    out.write(chunk, 0, n);
+                }
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            compressed.delete();
+            throw e;
+        } finally {
+            in.close();
+        }
+        if (!subLog.delete()) {
+            compressed.delete();
+            return subLog;
+        }
+        return compressed;
+    }
+
+    private void escape(String text) throws IOException {
+        int start = 0;
+        for (int i = 0; i < text.length(); i++) {
+            String entity;
+            switch (text.charAt(i)) {
+                case '&': entity = "&amp;"; break;
+                case '<': entity = "&lt;"; break;
+                case '>': entity = "&gt;"; break;
+                case '"': entity = "&quot;"; break;
+                case '\'': entity = "&apos;"; break;
+                default: continue;
+            }
+            out.write(text, start, i - start);
+            out.write(entity);
+            start = i + 1;
+        }
+        out.write(text, start, text.length() - start);
+    }
+
+    public void close() throws IOException {
+        try {
+            out.write("</" + MultiSCMChangeLogParser.MANIFEST_XML_TAG + ">\n");
+        } finally {
+            out.close();
+        }
+    }
+}
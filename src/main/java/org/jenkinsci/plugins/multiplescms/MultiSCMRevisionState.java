@@ -8,33 +8,139 @@ import hudson.model.Run;
 import hudson.scm.SCM;
 import hudson.scm.SCMRevisionState;
 
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class MultiSCMRevisionState extends SCMRevisionState {
-    private final Map<String, SCMRevisionState> revisionStates;
+    /** Above this many children lookups go through a hash index instead of a scan. */
+    private static final int INDEX_THRESHOLD = 8;
+
+    private static final String[] NO_KEYS = new String[0];
+    private static final SCMRevisionState[] NO_STATES = new SCMRevisionState[0];
+
+    /*
+     * Every build keeps one of these, so the children are stored as two
+     * parallel arrays rather than a map, with the keys interned: the same
+     * key strings are shared by all builds of all jobs. Children checked out
+     * in parallel add their states concurrently, so the arrays are only
+     * touched while holding the lock.
+     */
+    private String[] keys = NO_KEYS;
+    private SCMRevisionState[] states = NO_STATES;
+
+    /**
+     * Whether the keys may have been written by version 0.1 or 0.2, which
+     * keyed states differently; only then are lookups by the old keys tried.
+     */
+    private boolean legacyKeys;
+
+    /**
+     * Format up to 0.8, converted by {@link #readResolve()}.
+     */
+    @Deprecated
+    private Map<String, SCMRevisionState> revisionStates;
+
+    private transient volatile Map<String, Integer> index;
 
     public MultiSCMRevisionState() {
-        revisionStates = new HashMap<String, SCMRevisionState>();
+    }
+
+    private Object readResolve() {
+        if (revisionStates != null) {
+            keys = NO_KEYS;
+            states = NO_STATES;
+            for (Map.Entry<String, SCMRevisionState> e : revisionStates.entrySet()) {
+                put(e.getKey(), e.getValue());
+            }
+            revisionStates = null;
+            legacyKeys = true;
+        } else {
+            if (keys == null || states == null || keys.length != states.length) {
+                keys = NO_KEYS;
+                states = NO_STATES;
+            }
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = keys[i].intern();
+            }
+        }
+        return this;
     }
 
     public void add(@NonNull SCM scm, @NonNull FilePath ws, @Nullable Run<?,?> build, SCMRevisionState scmState) {
-        revisionStates.put(scm.getKey(), scmState);
+        put(scm.getKey(), scmState);
+    }
+
+    private synchronized void put(String key, SCMRevisionState state) {
+        int i = indexOf(key);
+        if (i >= 0) {
+            states[i] = state;
+            return;
+        }
+        int n = keys.length;
+        String[] newKeys = Arrays.copyOf(keys, n + 1);
+        SCMRevisionState[] newStates = Arrays.copyOf(states, n + 1);
+        newKeys[n] = key.intern();
+        newStates[n] = state;
+        keys = newKeys;
+        states = newStates;
+        Map<String, Integer> index = this.index;
+        if (index != null) {
+            // kept up to date rather than rebuilt, states are added one child at a time
+            index.put(newKeys[n], n);
+        }
     }
 
-    public SCMRevisionState get(@NonNull SCM scm, FilePath ws, @Nullable AbstractBuild<?,?> build) {
-        SCMRevisionState state = revisionStates.get(scm.getKey());
+    public synchronized SCMRevisionState get(@NonNull SCM scm, FilePath ws, @Nullable AbstractBuild<?,?> build) {
+        int i = indexOf(scm.getKey());
+        if (i >= 0) {
+            return states[i];
+        }
+        if (!legacyKeys) {
+            return null;
+        }
+        SCMRevisionState state = null;
         // At the moment we have a SCM that doesn't require a workspace ws will be null
-        if (state == null && ws != null) {
+        if (ws != null) {
             // backward compatibility with 0.2
-            state = revisionStates.get(keyFor(scm, ws, build));
+            i = indexOf(keyFor(scm, ws, build));
+            if (i >= 0) {
+                state = states[i];
+            }
         }
         // for backward compatibility with version 0.1, try to get the state using the class name as well
-        if (state == null)
-            state = revisionStates.get(scm.getClass().getName());
+        if (state == null) {
+            i = indexOf(scm.getClass().getName());
+            if (i >= 0) {
+                state = states[i];
+            }
+        }
         return state;
     }
 
+    private int indexOf(String key) {
+        String[] keys = this.keys;
+        if (keys.length <= INDEX_THRESHOLD) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i].equals(key)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+        Map<String, Integer> index = this.index;
+        if (index == null || index.size() != keys.length) {
+            index = new ConcurrentHashMap<String, Integer>(keys.length * 2);
+            for (int i = 0; i < keys.length; i++) {
+                index.put(keys[i], i);
+            }
+            this.index = index;
+        }
+        Integer i = index.get(key);
+        return i != null ? i : -1;
+    }
+
     private static String keyFor(@NonNull SCM scm, @NonNull FilePath ws, @Nullable AbstractBuild<?,?> build) { // JENKINS-12298
         StringBuilder b = new StringBuilder(scm.getType());
         for (FilePath root : scm.getModuleRoots(ws, build)) {
@@ -43,7 +149,11 @@ public class MultiSCMRevisionState extends SCMRevisionState {
         return b.toString();
     }
 
-    @Override public String toString() {
-        return "MultiSCMRevisionState" + revisionStates;
+    @Override public synchronized String toString() {
+        Map<String, SCMRevisionState> byKey = new LinkedHashMap<String, SCMRevisionState>();
+        for (int i = 0; i < keys.length; i++) {
+            byKey.put(keys[i], states[i]);
+        }
+        return "MultiSCMRevisionState" + byKey;
     }
 }
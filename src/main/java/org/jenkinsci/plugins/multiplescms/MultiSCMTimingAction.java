@@ -0,0 +1,184 @@
+package org.jenkinsci.plugins.multiplescms;
+
+import hudson.Util;
+import hudson.model.Action;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+/**
+ * How long each child SCM took to poll, check out and parse, so that the
+ * repository slowing a job down can be found. Shown as a table on the build
+ * page and available through the build's REST API.
+ */
+@ExportedBean
+public class MultiSCMTimingAction implements Action {
+
+    /**
+     * Timings of one child SCM. Durations are in milliseconds, -1 when not measured.
+     */
+    @ExportedBean(defaultVisibility = 2)
+    public static final class ChildTiming {
+        private final String scmKey;
+        private final String name;
+        private final long pollMillis;
+        private final long checkoutMillis;
+        private final long changelogBytes;
+        private transient volatile long parseMillis = -1;
+
+        ChildTiming(String scmKey, String name, long pollMillis, long checkoutMillis, long changelogBytes) {
+            this.scmKey = scmKey;
+            this.name = name;
+            this.pollMillis = pollMillis;
+            this.checkoutMillis = checkoutMillis;
+            this.changelogBytes = changelogBytes;
+        }
+
+        private Object readResolve() {
+            parseMillis = -1;
+            return this;
+        }
+
+        @Exported
+        public String getScmKey() {
+            return scmKey;
+        }
+
+        @Exported
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return duration of the poll that found the changes this build was started for,
+         *         or -1 if the child was not polled since the previous build
+         */
+        @Exported
+        public long getPollMillis() {
+            return pollMillis;
+        }
+
+        @Exported
+        public long getCheckoutMillis() {
+            return checkoutMillis;
+        }
+
+        /**
+         * @return size of the changelog the SCM wrote, -1 if it wrote none
+         */
+        @Exported
+        public long getChangelogBytes() {
+            return changelogBytes;
+        }
+
+        /**
+         * @return time the SCM's changelog parser took when the changes were
+         *         last loaded since Jenkins started, -1 if they were not. Not
+         *         persisted: the changes are loaded again after a restart anyway.
+         */
+        @Exported
+        public long getParseMillis() {
+            return parseMillis;
+        }
+
+        public String getPollDuration() {
+            return format(pollMillis);
+        }
+
+        public String getCheckoutDuration() {
+            return format(checkoutMillis);
+        }
+
+        public String getParseDuration() {
+            return format(parseMillis);
+        }
+
+        private static String format(long millis) {
+            return millis < 0 ? "-" : Util.getTimeSpanString(millis);
+        }
+    }
+
+    private final List<ChildTiming> children;
+
+    private transient volatile Map<String, List<ChildTiming>> byKey;
+
+    MultiSCMTimingAction(List<ChildTiming> children) {
+        this.children = new ArrayList<ChildTiming>(children);
+    }
+
+    /**
+     * @return the timings of {@code children}, after those of an earlier
+     *         checkout of the same build for other children, e.g. by another
+     *         Pipeline {@code checkout} step
+     */
+    static MultiSCMTimingAction merge(MultiSCMTimingAction earlier, List<ChildTiming> children) {
+        if (earlier == null) {
+            return new MultiSCMTimingAction(children);
+        }
+        Map<String, List<ChildTiming>> checkedOutAgain = new MultiSCMTimingAction(children).byKey();
+        List<ChildTiming> merged = new ArrayList<ChildTiming>();
+        for (ChildTiming child : earlier.children) {
+            // a retried checkout replaces what the failed one measured
+            if (!checkedOutAgain.containsKey(child.scmKey)) {
+                merged.add(child);
+            }
+        }
+        merged.addAll(children);
+        return new MultiSCMTimingAction(merged);
+    }
+
+    /**
+     * @return timings in configured SCM order, checkout by checkout
+     */
+    @Exported(inline = true)
+    public List<ChildTiming> getChildren() {
+        return Collections.unmodifiableList(children);
+    }
+
+    void recordParse(String scmKey, long millis) {
+        List<ChildTiming> timings = byKey().get(scmKey);
+        if (timings != null) {
+            for (ChildTiming child : timings) {
+                child.parseMillis = millis;
+            }
+        }
+    }
+
+    /**
+     * Looked up once per child, so jobs with many SCMs get an index.
+     */
+    private Map<String, List<ChildTiming>> byKey() {
+        Map<String, List<ChildTiming>> byKey = this.byKey;
+        if (byKey == null) {
+            byKey = new HashMap<String, List<ChildTiming>>();
+            for (ChildTiming child : children) {
+                List<ChildTiming> timings = byKey.get(child.scmKey);
+                if (timings == null) {
+                    timings = new ArrayList<ChildTiming>(1);
+                    byKey.put(child.scmKey, timings);
+                }
+                timings.add(child);
+            }
+            this.byKey = byKey;
+        }
+        return byKey;
+    }
+
+    public String getIconFileName() {
+        return null;
+    }
+
+    public String getDisplayName() {
+        return "SCM timings";
+    }
+
+    public String getUrlName() {
+        return "multiScmTimings";
+    }
+}
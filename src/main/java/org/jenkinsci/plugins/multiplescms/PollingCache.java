@@ -0,0 +1,182 @@
+package org.jenkinsci.plugins.multiplescms;
+
+import hudson.model.Items;
+import hudson.scm.PollingResult;
+import hudson.scm.SCM;
+import hudson.scm.SCMRevisionState;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Controller-wide cache of child SCM polling results, so that jobs sharing a
+ * repository within the TTL get one remote answer between them.
+ *
+ * A result is only reusable by a poll with the same SCM configuration and the
+ * same baseline, so both are part of the key. Polls that need a workspace are
+ * never cached, their answer depends on the job. Concurrent polls of the same
+ * key wait for the one already talking to the remote instead of starting
+ * their own, but not past the point where its result would expire anyway.
+ * If that poll fails or is interrupted, they poll themselves: another job's
+ * failure is not theirs to report.
+ */
+final class PollingCache {
+    private static final Logger LOGGER = Logger.getLogger(PollingCache.class.getName());
+
+    private static final class CachedPoll {
+        final FutureTask<PollingResult> task;
+        final long createdAt;
+
+        CachedPoll(FutureTask<PollingResult> task, long createdAt) {
+            this.task = task;
+            this.createdAt = createdAt;
+        }
+    }
+
+    private final long ttlMillis;
+    private final Map<String, CachedPoll> entries;
+
+    PollingCache(long ttlMillis, final int maxEntries) {
+        this.ttlMillis = ttlMillis;
+        // access ordered, so the eldest entry is the least recently used
+        this.entries = new LinkedHashMap<String, CachedPoll>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedPoll> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached result for polling {@code scm} against {@code baseline},
+     * or runs {@code poll} and caches its result.
+     *
+     * @return the result, and whether it came from the cache
+     */
+    Result poll(SCM scm, SCMRevisionState baseline, Callable<PollingResult> poll)
+            throws IOException, InterruptedException {
+        String key = keyOf(scm, baseline);
+        if (key == null) {
+            return new Result(call(poll), false);
+        }
+
+        CachedPoll cached;
+        boolean owner = false;
+        long now = System.currentTimeMillis();
+        synchronized (entries) {
+            cached = entries.get(key);
+            if (cached == null || now - cached.createdAt >= ttlMillis) {
+                cached = new CachedPoll(new FutureTask<PollingResult>(poll), now);
+                entries.put(key, cached);
+                owner = true;
+            }
+        }
+        if (owner) {
+            cached.task.run();
+            try {
+                return new Result(cached.task.get(), false);
+            } catch (ExecutionException e) {
+                // never keep a failure around, the next poll should try again
+                evict(key, cached);
+                throw rethrow(e.getCause());
+            }
+        }
+        try {
+            return new Result(cached.task.get(cached.createdAt + ttlMillis - now, TimeUnit.MILLISECONDS), true);
+        } catch (ExecutionException e) {
+            evict(key, cached);
+            LOGGER.log(Level.FINE, "Shared poll of " + scm.getKey() + " failed, polling again", e.getCause());
+        } catch (TimeoutException e) {
+            LOGGER.log(Level.FINE, "Shared poll of {0} is taking too long, polling again", scm.getKey());
+        }
+        return new Result(call(poll), false);
+    }
+
+    private void evict(String key, CachedPoll cached) {
+        synchronized (entries) {
+            if (entries.get(key) == cached) {
+                entries.remove(key);
+            }
+        }
+    }
+
+    int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * A poll's result together with whether it was shared from another job.
+     */
+    static final class Result {
+        final PollingResult result;
+        final boolean cached;
+
+        Result(PollingResult result, boolean cached) {
+            this.result = result;
+            this.cached = cached;
+        }
+    }
+
+    /**
+     * @return the cache key, or null if the poll must not be cached
+     */
+    private static String keyOf(SCM scm, SCMRevisionState baseline) {
+        if (scm.requiresWorkspaceForPolling() || baseline == null || baseline == SCMRevisionState.NONE) {
+            return null;
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(Items.XSTREAM2.toXML(scm).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(Items.XSTREAM2.toXML(baseline).getBytes(StandardCharsets.UTF_8));
+            StringBuilder key = new StringBuilder(scm.getKey()).append('#');
+            for (byte b : digest.digest()) {
+                key.append(String.format("%02x", b));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        } catch (RuntimeException e) {
+            // not every SCM or state serializes cleanly; just don't share those
+            LOGGER.log(Level.FINE, "Not caching polls of " + scm.getKey(), e);
+            return null;
+        }
+    }
+
+    private static PollingResult call(Callable<PollingResult> poll) throws IOException, InterruptedException {
+        try {
+            return poll.call();
+        } catch (Exception e) {
+            throw rethrow(e);
+        }
+    }
+
+    private static IOException rethrow(Throwable t) throws InterruptedException {
+        if (t instanceof IOException) {
+            return (IOException) t;
+        }
+        if (t instanceof InterruptedException) {
+            throw (InterruptedException) t;
+        }
+        if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        }
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        return new IOException(t);
+    }
+}
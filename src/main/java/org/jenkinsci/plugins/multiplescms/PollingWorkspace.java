@@ -0,0 +1,83 @@
+package org.jenkinsci.plugins.multiplescms;
+
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.Computer;
+import hudson.model.Node;
+import hudson.model.TaskListener;
+import hudson.slaves.WorkspaceList;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * The workspace children that need one poll in when {@link MultiSCM} polls
+ * in hybrid mode, i.e. on the controller without a workspace of its own.
+ * Looked up the way Jenkins does for SCMs requiring a workspace for polling,
+ * and held for the whole polling cycle so that a build cannot start in it
+ * halfway through.
+ */
+final class PollingWorkspace implements Closeable {
+    private final FilePath workspace;
+    private final Launcher launcher;
+    private final WorkspaceList.Lease lease;
+
+    private PollingWorkspace(FilePath workspace, Launcher launcher, WorkspaceList.Lease lease) {
+        this.workspace = workspace;
+        this.launcher = launcher;
+        this.lease = lease;
+    }
+
+    FilePath getWorkspace() {
+        return workspace;
+    }
+
+    Launcher getLauncher() {
+        return launcher;
+    }
+
+    /**
+     * @return the workspace of the project's last build that still has one,
+     *         or null (with the reason logged) if there is none or its agent is offline
+     */
+    static PollingWorkspace acquire(AbstractProject<?, ?> project, TaskListener listener)
+            throws IOException, InterruptedException {
+        AbstractBuild<?, ?> build = project.getSomeBuildWithWorkspace();
+        FilePath workspace = build != null ? build.getWorkspace() : null;
+        Node node = build != null ? build.getBuiltOn() : null;
+        if (workspace == null || node == null) {
+            listener.getLogger().println("No workspace is available to poll the SCMs that need one");
+            return null;
+        }
+        Computer computer = node.toComputer();
+        if (computer == null || computer.isOffline()) {
+            listener.getLogger().println("The agent holding the workspace for polling is offline");
+            return null;
+        }
+        if (!workspace.exists()) {
+            listener.getLogger().println("Workspace " + workspace.getRemote() + " for polling no longer exists");
+            return null;
+        }
+        WorkspaceList.Lease lease = computer.getWorkspaceList().acquire(workspace, !project.isConcurrentBuild());
+        try {
+            Launcher launcher = workspace.createLauncher(listener)
+                    .decorateByEnv(project.getEnvironment(node, listener));
+            return new PollingWorkspace(workspace, launcher, lease);
+        } catch (IOException e) {
+            lease.release();
+            throw e;
+        } catch (InterruptedException e) {
+            lease.release();
+            throw e;
+        } catch (RuntimeException e) {
+            lease.release();
+            throw e;
+        }
+    }
+
+    public void close() {
+        lease.release();
+    }
+}
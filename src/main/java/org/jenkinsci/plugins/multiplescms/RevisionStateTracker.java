@@ -0,0 +1,76 @@
+package org.jenkinsci.plugins.multiplescms;
+
+import hudson.model.Action;
+import hudson.model.Run;
+import hudson.scm.SCM;
+import hudson.scm.SCMRevisionState;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Works out which {@link SCMRevisionState} actions a child SCM added to the
+ * build during its checkout.
+ *
+ * Some SCMs (Subversion, Mercurial, ...) record their revision state by adding
+ * an action to the build rather than through {@link SCM#calcRevisionsFromBuild}.
+ * Each state is handed out once; states that were already on the build before
+ * the checkout started (e.g. from a retried checkout) are never handed out.
+ * Only usable while children are checked out one at a time.
+ */
+final class RevisionStateTracker {
+    private final Run<?, ?> build;
+    private final Set<Action> seen = Collections.newSetFromMap(new IdentityHashMap<Action, Boolean>());
+    private final List<SCMRevisionState> unclaimed = new ArrayList<SCMRevisionState>();
+
+    /*
+     * Only the actions added since the last claim are looked at, so that
+     * checking out many children does not scan the growing list of actions
+     * once per child. The last action seen tells whether the list was only
+     * appended to since.
+     */
+    private int scanned;
+    private Action last;
+
+    RevisionStateTracker(Run<?, ?> build) {
+        this.build = build;
+        Object[] actions = build.getActions().toArray();
+        for (Object a : actions) {
+            seen.add((Action) a);
+        }
+        scanned = actions.length;
+        last = scanned > 0 ? (Action) actions[scanned - 1] : null;
+    }
+
+    /**
+     * Claims every new revision state on the build. Only correct when
+     * children are checked out one at a time.
+     */
+    synchronized List<SCMRevisionState> claimAll() {
+        scan();
+        List<SCMRevisionState> states = new ArrayList<SCMRevisionState>(unclaimed);
+        unclaimed.clear();
+        return states;
+    }
+
+    private void scan() {
+        // a snapshot, the list may be added to concurrently
+        Object[] actions = build.getActions().toArray();
+        int from = scanned;
+        if (from > actions.length || (from > 0 && actions[from - 1] != last)) {
+            // actions were removed or replaced: look at all of them again
+            from = 0;
+        }
+        for (int i = from; i < actions.length; i++) {
+            Action a = (Action) actions[i];
+            if (a instanceof SCMRevisionState && !(a instanceof MultiSCMRevisionState) && seen.add(a)) {
+                unclaimed.add((SCMRevisionState) a);
+            }
+        }
+        scanned = actions.length;
+        last = scanned > 0 ? (Action) actions[scanned - 1] : null;
+    }
+}
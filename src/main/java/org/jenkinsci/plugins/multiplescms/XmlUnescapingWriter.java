@@ -0,0 +1,116 @@
+package org.jenkinsci.plugins.multiplescms;
+
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Resolves the XML entities written by {@link MultiSCMChangeLogWriter} (and by
+ * older plugin versions, which also used numeric entities) while the text
+ * streams through. An entity may be split across any number of writes.
+ * Anything that does not look like a known entity is passed through unchanged.
+ */
+final class XmlUnescapingWriter extends FilterWriter {
+    /** Longer than any entity we understand, e.g. {@code &#x10FFFF;}. */
+    private static final int MAX_ENTITY_LENGTH = 10;
+
+    private final char[] entity = new char[MAX_ENTITY_LENGTH];
+    private int entityLength;
+
+    XmlUnescapingWriter(Writer out) {
+        super(out);
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        write(new char[] {(char) c}, 0, 1);
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        write(str.toCharArray(), off, len);
+    }
+
+    @Override
+    public void write(char[] data, int off, int len) throws IOException {
+        int start = off;
+        int end = off + len;
+        for (int i = off; i < end; i++) {
+            char c = data[i];
+            if (entityLength > 0) {
+                if (c == ';') {
+                    entity[entityLength++] = c;
+                    resolveEntity();
+                } else if (c == '&') {
+                    flushEntity();
+                    entity[entityLength++] = c;
+                } else if (entityLength == MAX_ENTITY_LENGTH - 1) {
+                    flushEntity();
+                    out.write(c);
+                } else {
+                    entity[entityLength++] = c;
+                }
+                start = i + 1;
+            } else if (c == '&') {
+                out.write(data, start, i - start);
+                entity[entityLength++] = c;
+                start = i + 1;
+            }
+        }
+        if (entityLength == 0) {
+            out.write(data, start, end - start);
+        }
+    }
+
+    private void resolveEntity() throws IOException {
+        String name = new String(entity, 1, entityLength - 2);
+        int resolved = -1;
+        if (name.equals("amp")) {
+            resolved = '&';
+        } else if (name.equals("lt")) {
+            resolved = '<';
+        } else if (name.equals("gt")) {
+            resolved = '>';
+        } else if (name.equals("quot")) {
+            resolved = '"';
+        } else if (name.equals("apos")) {
+            resolved = '\'';
+        } else if (name.length() > 1 && name.charAt(0) == '#') {
+            try {
+                if (name.charAt(1) == 'x' || name.charAt(1) == 'X') {
+                    resolved = Integer.parseInt(name.substring(2), 16);
+                } else {
+                    resolved = Integer.parseInt(name.substring(1));
+                }
+            } catch (NumberFormatException e) {
+                resolved = -1;
+            }
+        }
+        if (resolved >= 0 && Character.isValidCodePoint(resolved)) {
+            out.write(Character.toChars(resolved));
+            entityLength = 0;
+        } else {
+            flushEntity();
+        }
+    }
+
+    private void flushEntity() throws IOException {
+        out.write(entity, 0, entityLength);
+        entityLength = 0;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        // an incomplete entity stays buffered, more text may complete it
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flushEntity();
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package org.jenkinsci.plugins.multiplescms;
+
+import hudson.model.FreeStyleProject;
+import hudson.model.TaskListener;
+import hudson.scm.SCM;
+
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ChildPollingPolicyTest {
+
+    @Rule
+    public JenkinsRule jenkins = new JenkinsRule();
+
+    @Test
+    public void childrenArePolledAsOftenAsTheirPolicySays() throws Exception {
+        StubSCM every = new StubSCM("every", 0);
+        StubSCM third = new StubSCM("third", 0);
+        StubSCM hourly = new StubSCM("hourly", 0);
+        StubSCM never = new StubSCM("never", 0);
+        MultiSCM multiSCM = new MultiSCM(Arrays.<SCM>asList(every, third, hourly, never));
+        multiSCM.setPollingPolicies(Arrays.asList(
+                new ChildPollingPolicy(third.getKey(), false, 3, 0),
+                new ChildPollingPolicy(hourly.getKey(), false, 1, 60),
+                new ChildPollingPolicy(never.getKey(), true, 1, 0)));
+        FreeStyleProject project = jenkins.createFreeStyleProject();
+        project.setScm(multiSCM);
+        jenkins.buildAndAssertSuccess(project);
+
+        for (int i = 0; i < 7; i++) {
+            project.poll(TaskListener.NULL);
+        }
+        assertEquals(7, every.getPolls());
+        // on cycles 1, 4 and 7
+        assertEquals(3, third.getPolls());
+        assertEquals(1, hourly.getPolls());
+        assertEquals(0, never.getPolls());
+    }
+
+    @Test
+    public void childStaysDueUntilItsPollSucceeds() throws Exception {
+        StubSCM other = new StubSCM("other", 0);
+        StubSCM third = new StubSCM("third", 0);
+        third.setBrokenPolling(true);
+        MultiSCM multiSCM = new MultiSCM(Arrays.<SCM>asList(other, third));
+        multiSCM.setParallelPolling(true);
+        multiSCM.setPollingPolicies(Arrays.asList(new ChildPollingPolicy(third.getKey(), false, 3, 0)));
+        FreeStyleProject project = jenkins.createFreeStyleProject();
+        project.setScm(multiSCM);
+        jenkins.buildAndAssertSuccess(project);
+
+        project.poll(TaskListener.NULL);
+        project.poll(TaskListener.NULL);
+        assertEquals(2, third.getPolls());
+
+        third.setBrokenPolling(false);
+        project.poll(TaskListener.NULL);
+        assertEquals(3, third.getPolls());
+        // now it waits for its cycles
+        project.poll(TaskListener.NULL);
+        project.poll(TaskListener.NULL);
+        assertEquals(3, third.getPolls());
+        project.poll(TaskListener.NULL);
+        assertEquals(4, third.getPolls());
+    }
+
+    @Test
+    public void childrenNeverPolledDoNotCountForPollingSupport() throws Exception {
+        StubSCM remote = new StubSCM("remote", 0);
+        StubSCM local = new StubSCM("local", 0);
+        local.setRequiresWorkspace(true);
+        local.setSupportsPolling(false);
+        MultiSCM multiSCM = new MultiSCM(Arrays.<SCM>asList(remote, local));
+        assertFalse(multiSCM.supportsPolling());
+        assertTrue(multiSCM.requiresWorkspaceForPolling());
+
+        multiSCM.setPollingPolicies(Arrays.asList(new ChildPollingPolicy(local.getKey(), true, 1, 0)));
+        assertTrue(multiSCM.supportsPolling());
+        assertFalse(multiSCM.requiresWorkspaceForPolling());
+    }
+}
@@ -0,0 +1,91 @@
+package org.jenkinsci.plugins.multiplescms;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ChildTaskRunnerTest {
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        ChildTaskRunner.setMaxThreads(ChildTaskRunner.DEFAULT_MAX_THREADS);
+    }
+
+    /**
+     * Like a poll stuck in a network call that does not respond to interrupts.
+     */
+    private final Callable<String> hung = new Callable<String>() {
+        public String call() {
+            while (true) {
+                try {
+                    release.await();
+                    return "late";
+                } catch (InterruptedException e) {
+                    // keep hanging
+                }
+            }
+        }
+    };
+
+    @Test
+    public void timedOutTasksDoNotPileUpThreads() throws Exception {
+        ChildTaskRunner.setMaxThreads(4);
+        for (int round = 0; round < 10; round++) {
+            List<ChildTaskRunner.Outcome<String>> outcomes =
+                    new ChildTaskRunner("test", 2, 100).invokeAll(Collections.nCopies(2, hung));
+            // once the pool is full of hung tasks, the later rounds time out without starting
+            for (ChildTaskRunner.Outcome<String> outcome : outcomes) {
+                assertTrue(outcome.isTimedOut());
+            }
+        }
+        assertTrue(ChildTaskRunner.getPoolSize() <= 4);
+
+        release.countDown();
+        List<ChildTaskRunner.Outcome<String>> outcomes = new ChildTaskRunner("test", 2, 10000)
+                .invokeAll(Collections.singletonList(new Callable<String>() {
+                    public String call() {
+                        return "fine";
+                    }
+                }));
+        assertEquals("fine", outcomes.get(0).getValue());
+    }
+
+    @Test
+    public void eachCallKeepsToItsOwnThreadLimit() throws Exception {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+        for (int i = 0; i < 8; i++) {
+            final int n = i;
+            tasks.add(new Callable<Integer>() {
+                public Integer call() throws Exception {
+                    int now = running.incrementAndGet();
+                    synchronized (maxRunning) {
+                        maxRunning.set(Math.max(maxRunning.get(), now));
+                    }
+                    Thread.sleep(50);
+                    running.decrementAndGet();
+                    return n;
+                }
+            });
+        }
+
+        List<ChildTaskRunner.Outcome<Integer>> outcomes = new ChildTaskRunner("test", 2, 0).invokeAll(tasks);
+        assertTrue(maxRunning.get() <= 2);
+        for (int i = 0; i < tasks.size(); i++) {
+            assertEquals(Integer.valueOf(i), outcomes.get(i).getValue());
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package org.jenkinsci.plugins.multiplescms;
+
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.TaskListener;
+import hudson.scm.PollingResult;
+import hudson.scm.SCM;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import static org.junit.Assert.assertEquals;
+
+public class IncrementalCheckoutTest {
+
+    @Rule
+    public JenkinsRule jenkins = new JenkinsRule();
+
+    private StubSCM same;
+    private StubSCM changed;
+    private FreeStyleProject project;
+
+    @Before
+    public void setUp() throws Exception {
+        same = new StubSCM("same", 1);
+        same.setRevision("1");
+        changed = new StubSCM("changed", 1);
+        changed.setRevision("1");
+        MultiSCM multiSCM = new MultiSCM(Arrays.<SCM>asList(same, changed));
+        multiSCM.setIncrementalCheckout(true);
+        project = jenkins.createFreeStyleProject();
+        project.setScm(multiSCM);
+        jenkins.buildAndAssertSuccess(project);
+        changed.setRevision("2");
+    }
+
+    private static String revision(FreeStyleBuild build, SCM scm) {
+        MultiSCMRevisionState states = build.getAction(MultiSCMRevisionState.class);
+        return ((StubSCM.StubRevisionState) states.get(scm, null, null)).getRevision();
+    }
+
+    @Test
+    public void childWithoutChangesIsNotCheckedOutAgain() throws Exception {
+        // what the workspace holds is not told by the timings
+        FreeStyleBuild first = project.getLastBuild();
+        first.removeAction(first.getAction(MultiSCMTimingAction.class));
+        assertEquals(PollingResult.Change.SIGNIFICANT, project.poll(TaskListener.NULL).change);
+        FreeStyleBuild build = jenkins.buildAndAssertSuccess(project);
+
+        jenkins.assertLogContains("Skipping checkout of " + same.getKey(), build);
+        assertEquals(1, same.getCheckouts());
+        assertEquals(2, changed.getCheckouts());
+        // the skipped child keeps the state of what the workspace still holds
+        assertEquals("1", revision(build, same));
+        assertEquals("2", revision(build, changed));
+        assertEquals(PollingResult.Change.NONE, project.poll(TaskListener.NULL).change);
+    }
+
+    @Test
+    public void childWithoutChangesIsCheckedOutIfItsModuleRootIsGone() throws Exception {
+        project.getSomeBuildWithWorkspace().getWorkspace().child(same.getName()).deleteRecursive();
+        project.poll(TaskListener.NULL);
+        jenkins.buildAndAssertSuccess(project);
+
+        assertEquals(2, same.getCheckouts());
+    }
+
+    @Test
+    public void childWithoutChangesIsCheckedOutInAnotherWorkspace() throws Exception {
+        project.poll(TaskListener.NULL);
+        project.setCustomWorkspace(new File(project.getRootDir(), "elsewhere").getPath());
+        jenkins.buildAndAssertSuccess(project);
+
+        assertEquals(2, same.getCheckouts());
+    }
+
+    @Test
+    public void childIsCheckedOutIfThePreviousBuildDoesNotSayItWasCheckedOut() throws Exception {
+        FreeStyleBuild first = project.getLastBuild();
+        first.removeAction(first.getAction(MultiSCMBuildData.class));
+        project.poll(TaskListener.NULL);
+        jenkins.buildAndAssertSuccess(project);
+
+        assertEquals(2, same.getCheckouts());
+    }
+
+    @Test
+    public void childIsCheckedOutIfNotPolledSinceTheLastBuild() throws Exception {
+        project.poll(TaskListener.NULL);
+        jenkins.buildAndAssertSuccess(project);
+        jenkins.buildAndAssertSuccess(project);
+
+        assertEquals(2, same.getCheckouts());
+    }
+}
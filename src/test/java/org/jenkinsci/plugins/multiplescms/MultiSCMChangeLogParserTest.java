@@ -0,0 +1,196 @@
+package org.jenkinsci.plugins.multiplescms;
+
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.Run;
+import hudson.scm.ChangeLogParser;
+import hudson.scm.ChangeLogSet;
+import hudson.scm.RepositoryBrowser;
+import hudson.scm.SCM;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.lang.StringEscapeUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MultiSCMChangeLogParserTest {
+
+    @Rule
+    public JenkinsRule jenkins = new JenkinsRule();
+
+    private static final int THREADS = 16;
+    private static final int ROUNDS = 20;
+
+    @Test
+    public void concurrentParsingOfManifest() throws Exception {
+        List<StubSCM> scms = stubs();
+        FreeStyleProject project = jenkins.createFreeStyleProject();
+        project.setScm(new MultiSCM(new ArrayList<SCM>(scms)));
+        FreeStyleBuild build = jenkins.buildAndAssertSuccess(project);
+
+        hammer((MultiSCM) project.getScm(), build, new File(build.getRootDir(), "changelog.xml"), scms);
+    }
+
+    @Test
+    public void concurrentParsingOfCompressedManifest() throws Exception {
+        List<StubSCM> scms = stubs();
+        FreeStyleProject project = jenkins.createFreeStyleProject();
+        MultiSCM multiSCM = new MultiSCM(new ArrayList<SCM>(scms));
+        multiSCM.setCompressChangelogs(true);
+        project.setScm(multiSCM);
+        FreeStyleBuild build = jenkins.buildAndAssertSuccess(project);
+
+        assertTrue(new File(build.getRootDir(), "changelog.xml.0.gz").isFile());
+        assertFalse(new File(build.getRootDir(), "changelog.xml.0").exists());
+        hammer((MultiSCM) project.getScm(), build, new File(build.getRootDir(), "changelog.xml"), scms);
+    }
+
+    @Test
+    public void concurrentParsingWhileCompressingInBackground() throws Exception {
+        List<StubSCM> scms = stubs();
+        FreeStyleProject project = jenkins.createFreeStyleProject();
+        MultiSCM multiSCM = new MultiSCM(new ArrayList<SCM>(scms));
+        multiSCM.setCompressChangelogs(true);
+        multiSCM.setCompressInBackground(true);
+        project.setScm(multiSCM);
+        FreeStyleBuild build = jenkins.buildAndAssertSuccess(project);
+
+        hammer((MultiSCM) project.getScm(), build, new File(build.getRootDir(), "changelog.xml"), scms);
+        File subLog = new File(build.getRootDir(), "changelog.xml.0");
+        ChangeLogCompression.await(subLog);
+        assertTrue(new File(build.getRootDir(), "changelog.xml.0.gz").isFile());
+        assertFalse(subLog.exists());
+        hammer((MultiSCM) project.getScm(), build, new File(build.getRootDir(), "changelog.xml"), scms);
+    }
+
+    @Test
+    public void concurrentParsingOfOldFormat() throws Exception {
+        List<StubSCM> scms = stubs();
+        FreeStyleProject project = jenkins.createFreeStyleProject();
+        project.setScm(new MultiSCM(new ArrayList<SCM>(scms)));
+        FreeStyleBuild build = jenkins.buildAndAssertSuccess(project);
+
+        // the single escaped file written before 0.9
+        StringBuilder log = new StringBuilder("<multi-scm-log>\n");
+        for (StubSCM scm : scms) {
+            StringBuilder subLog = new StringBuilder();
+            for (String message : scm.messages()) {
+                subLog.append(message).append('\n');
+            }
+            log.append(String.format("<sub-log scm=\"%s\">\n<![CDATA[%s]]>\n</sub-log>\n",
+                    StringEscapeUtils.escapeXml(scm.getKey()), StringEscapeUtils.escapeXml(subLog.toString())));
+        }
+        log.append("</multi-scm-log>\n");
+        File changelogFile = new File(build.getRootDir(), "changelog-old.xml");
+        Files.write(changelogFile.toPath(), log.toString().getBytes(StandardCharsets.UTF_8));
+
+        hammer((MultiSCM) project.getScm(), build, changelogFile, scms);
+    }
+
+    @Test
+    public void failingChildParserOnlyAffectsItsOwnSection() throws Exception {
+        List<StubSCM> scms = stubs();
+        FreeStyleProject project = jenkins.createFreeStyleProject();
+        project.setScm(new MultiSCM(new ArrayList<SCM>(scms)));
+        FreeStyleBuild build = jenkins.buildAndAssertSuccess(project);
+
+        Map<String, ChangeLogParser> parsers = new LinkedHashMap<String, ChangeLogParser>();
+        Map<String, String> names = new HashMap<String, String>();
+        for (StubSCM scm : scms) {
+            parsers.put(scm.getKey(), scm == scms.get(1) ? new BrokenChangeLogParser() : scm.createChangeLogParser());
+            names.put(scm.getKey(), scm.getKey());
+        }
+        MultiSCMChangeLogSet changes = (MultiSCMChangeLogSet) new MultiSCMChangeLogParser(parsers, names)
+                .parse(build, new File(build.getRootDir(), "changelog.xml"));
+
+        List<MultiSCMChangeLogSet.ChangeLogSetWrapper> wrappers =
+                new ArrayList<MultiSCMChangeLogSet.ChangeLogSetWrapper>(changes.getChangeLogSetWrappers());
+        assertEquals(3, wrappers.size());
+        assertEquals(500, wrappers.get(0).getSize());
+        assertNull(wrappers.get(0).getError());
+        assertEquals(scms.get(1).getKey(), wrappers.get(1).getName());
+        assertEquals(0, wrappers.get(1).getSize());
+        assertEquals("broken", wrappers.get(1).getError());
+        assertEquals(2000, wrappers.get(2).getSize());
+        assertNull(wrappers.get(2).getError());
+    }
+
+    private static final class BrokenChangeLogParser extends ChangeLogParser {
+        @Override
+        public ChangeLogSet<? extends ChangeLogSet.Entry> parse(Run build, RepositoryBrowser<?> browser,
+                File changelogFile) throws IOException {
+            throw new IOException("broken");
+        }
+    }
+
+    private static List<StubSCM> stubs() {
+        return Arrays.asList(new StubSCM("alpha", 500), new StubSCM("beta & <gamma>", 1),
+                new StubSCM("delta", 0), new StubSCM("epsilon", 2000));
+    }
+
+    /**
+     * Parses the same changelog from many threads at once; every thread has
+     * to see exactly the changes of every SCM.
+     */
+    private static void hammer(final MultiSCM multiSCM, final FreeStyleBuild build, final File changelogFile,
+            final List<StubSCM> scms) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            final CountDownLatch start = new CountDownLatch(1);
+            List<Future<Void>> results = new ArrayList<Future<Void>>();
+            for (int t = 0; t < THREADS; t++) {
+                results.add(executor.submit(new Callable<Void>() {
+                    public Void call() throws Exception {
+                        start.await();
+                        for (int round = 0; round < ROUNDS; round++) {
+                            check(scms, multiSCM.createChangeLogParser().parse(build, changelogFile));
+                        }
+                        return null;
+                    }
+                }));
+            }
+            start.countDown();
+            for (Future<Void> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void check(List<StubSCM> scms, ChangeLogSet<? extends ChangeLogSet.Entry> changes)
+            throws IOException {
+        List<String> expected = new ArrayList<String>();
+        for (StubSCM scm : scms) {
+            expected.addAll(scm.messages());
+        }
+        List<String> actual = new ArrayList<String>();
+        for (MultiSCMChangeLogSet.ChangeLogSetWrapper wrapper : ((MultiSCMChangeLogSet) changes).getChangeLogSetWrappers()) {
+            for (ChangeLogSet.Entry entry : wrapper.getLogs()) {
+                actual.add(entry.getMsg());
+            }
+        }
+        assertEquals(expected, actual);
+    }
+}
@@ -0,0 +1,112 @@
+package org.jenkinsci.plugins.multiplescms;
+
+import hudson.model.User;
+import hudson.scm.ChangeLogSet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class MultiSCMChangeLogSetTest {
+
+    private static MultiSCMChangeLogSet changes() {
+        MultiSCMChangeLogSet changes = new MultiSCMChangeLogSet(null);
+        // each SCM's changes in no particular order
+        changes.add("a", "A", new TimedChangeLogSet("a", 50, 10, 30));
+        changes.declare("empty", "Empty");
+        changes.add("b", "B", new TimedChangeLogSet("b", 30, -1, 40, 20));
+        return changes;
+    }
+
+    private static List<String> messages(Iterable<ChangeLogSet.Entry> entries) {
+        List<String> messages = new ArrayList<String>();
+        for (ChangeLogSet.Entry entry : entries) {
+            messages.add(entry.getMsg());
+        }
+        return messages;
+    }
+
+    @Test
+    public void oldestFirst() {
+        assertEquals(Arrays.asList("b-1", "a10", "b20", "a30", "b30", "b40", "a50"),
+                messages(changes().getEntriesByTimestamp(false)));
+    }
+
+    @Test
+    public void newestFirst() {
+        // ties still in configured order, entries without a timestamp still count as the oldest
+        assertEquals(Arrays.asList("a50", "b40", "a30", "b30", "b20", "a10", "b-1"),
+                messages(changes().getEntriesByTimestamp(true)));
+    }
+
+    @Test
+    public void canBeIteratedMoreThanOnce() {
+        Iterable<ChangeLogSet.Entry> entries = changes().getEntriesByTimestamp(false);
+        assertEquals(messages(entries), messages(entries));
+    }
+
+    @Test
+    public void noChanges() {
+        MultiSCMChangeLogSet changes = new MultiSCMChangeLogSet(null);
+        changes.declare("empty", "Empty");
+        assertEquals(Collections.<String>emptyList(), messages(changes.getEntriesByTimestamp(true)));
+    }
+
+    private static final class TimedChangeLogSet extends ChangeLogSet<TimedEntry> {
+        private final List<TimedEntry> entries = new ArrayList<TimedEntry>();
+
+        TimedChangeLogSet(String name, long... timestamps) {
+            super(null, null);
+            for (long timestamp : timestamps) {
+                entries.add(new TimedEntry(this, name + timestamp, timestamp));
+            }
+        }
+
+        @Override
+        public boolean isEmptySet() {
+            return entries.isEmpty();
+        }
+
+        public Iterator<TimedEntry> iterator() {
+            return entries.iterator();
+        }
+    }
+
+    private static final class TimedEntry extends ChangeLogSet.Entry {
+        private final String msg;
+        private final long timestamp;
+
+        TimedEntry(TimedChangeLogSet parent, String msg, long timestamp) {
+            this.msg = msg;
+            this.timestamp = timestamp;
+            setParent(parent);
+        }
+
+        @Override
+        public String getMsg() {
+            return msg;
+        }
+
+        @Override
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        @Override
+        public User getAuthor() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Collection<String> getAffectedPaths() {
+            return Collections.emptyList();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package org.jenkinsci.plugins.multiplescms;
+
+import hudson.scm.SCMRevisionState;
+import hudson.util.XStream2;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class MultiSCMRevisionStateTest {
+
+    private static final String STATE = MultiSCMRevisionState.class.getName();
+
+    private final XStream2 xstream = new XStream2();
+
+    @Test
+    public void addAndGet() {
+        MultiSCMRevisionState states = new MultiSCMRevisionState();
+        // enough children to go through the index
+        for (int i = 0; i < 20; i++) {
+            states.add(new StubSCM("scm" + i, 0), null, null, new MultiSCMRevisionState());
+        }
+        SCMRevisionState replaced = new MultiSCMRevisionState();
+        states.add(new StubSCM("scm7", 0), null, null, replaced);
+
+        assertSame(replaced, states.get(new StubSCM("scm7", 0), null, null));
+        assertNotNull(states.get(new StubSCM("scm19", 0), null, null));
+        assertNull(states.get(new StubSCM("other", 0), null, null));
+    }
+
+    @Test
+    public void roundTrip() {
+        MultiSCMRevisionState states = new MultiSCMRevisionState();
+        states.add(new StubSCM("a", 0), null, null, new MultiSCMRevisionState());
+        states.add(new StubSCM("b", 0), null, null, null);
+
+        String xml = xstream.toXML(states);
+        MultiSCMRevisionState read = (MultiSCMRevisionState) xstream.fromXML(xml);
+
+        assertNotNull(read.get(new StubSCM("a", 0), null, null));
+        assertNull(read.get(new StubSCM("b", 0), null, null));
+        assertEquals(states.toString(), read.toString());
+    }
+
+    @Test
+    public void readsOldFormat() {
+        // as written by 0.8 and before, including a key from 0.1 (the class name)
+        String xml = "<" + STATE + ">"
+                + "<revisionStates>"
+                + "<entry><string>stub a</string><" + STATE + "><revisionStates/></" + STATE + "></entry>"
+                + "<entry><string>" + StubSCM.class.getName() + "</string><" + STATE + "><revisionStates/></" + STATE + "></entry>"
+                + "</revisionStates>"
+                + "</" + STATE + ">";
+        MultiSCMRevisionState read = (MultiSCMRevisionState) xstream.fromXML(xml);
+
+        assertNotNull(read.get(new StubSCM("a", 0), null, null));
+        assertNotNull(read.get(new StubSCM("b", 0), null, null));
+
+        // and keeps reading them after being saved again
+        MultiSCMRevisionState reread = (MultiSCMRevisionState) xstream.fromXML(xstream.toXML(read));
+        assertNotNull(reread.get(new StubSCM("b", 0), null, null));
+    }
+
+    @Test
+    public void childrenAddedConcurrentlyCanBeReadMeanwhile() throws Exception {
+        final MultiSCMRevisionState states = new MultiSCMRevisionState();
+        final int perThread = 200;
+        ExecutorService executor = Executors.newFixedThreadPool(5);
+        try {
+            List<Future<?>> writers = new ArrayList<Future<?>>();
+            for (int t = 0; t < 4; t++) {
+                final int thread = t;
+                writers.add(executor.submit(new Callable<Void>() {
+                    public Void call() {
+                        for (int i = 0; i < perThread; i++) {
+                            String name = thread + "-" + i;
+                            states.add(new StubSCM(name, 0), null, null, new StubSCM.StubRevisionState(name, name));
+                        }
+                        return null;
+                    }
+                }));
+            }
+            Future<?> reader = executor.submit(new Callable<Void>() {
+                public Void call() {
+                    for (int i = 0; i < 10000; i++) {
+                        // found or not yet, but never another child's state or an exception
+                        String name = "0-" + (i % perThread);
+                        SCMRevisionState state = states.get(new StubSCM(name, 0), null, null);
+                        if (state != null) {
+                            assertEquals(name, ((StubSCM.StubRevisionState) state).getRevision());
+                        }
+                    }
+                    return null;
+                }
+            });
+            for (Future<?> writer : writers) {
+                writer.get();
+            }
+            reader.get();
+        } finally {
+            executor.shutdownNow();
+        }
+        for (int t = 0; t < 4; t++) {
+            for (int i = 0; i < perThread; i++) {
+                assertNotNull(states.get(new StubSCM(t + "-" + i, 0), null, null));
+            }
+        }
+    }
+}
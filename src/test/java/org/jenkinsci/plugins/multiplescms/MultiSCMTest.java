@@ -0,0 +1,317 @@
+package org.jenkinsci.plugins.multiplescms;
+
+import hudson.EnvVars;
+import hudson.FilePath;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.TaskListener;
+import hudson.scm.PollingResult;
+import hudson.scm.SCM;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class MultiSCMTest {
+
+    @Rule
+    public JenkinsRule jenkins = new JenkinsRule();
+
+    @Test
+    public void collidingEnvVarsGetTheIndexOfTheirSCM() throws Exception {
+        FreeStyleProject project = jenkins.createFreeStyleProject();
+        project.setScm(new MultiSCM(Arrays.<SCM>asList(
+                new StubSCM("a", 0), new StubSCM("b", 0), new StubSCM("c", 0))));
+        FreeStyleBuild build = jenkins.buildAndAssertSuccess(project);
+
+        for (int i = 0; i < 2; i++) {
+            EnvVars env = build.getEnvironment(TaskListener.NULL);
+            assertEquals("a", env.get("STUB_NAME"));
+            assertEquals("b", env.get("STUB_NAME_1"));
+            assertEquals("c", env.get("STUB_NAME_2"));
+        }
+    }
+
+    @Test
+    public void filesAreAttributedToTheSCMOwningThem() throws Exception {
+        StubSCM a = new StubSCM("a", 0);
+        StubSCM b = new StubSCM("b", 0);
+        FreeStyleProject project = jenkins.createFreeStyleProject();
+        project.setScm(new MultiSCM(Arrays.<SCM>asList(a, b)));
+        FreeStyleBuild build = jenkins.buildAndAssertSuccess(project);
+        MultiSCM scm = (MultiSCM) project.getScm();
+        FilePath workspace = build.getWorkspace();
+
+        assertEquals(2, scm.getModuleRoots(workspace, build).length);
+        assertSame(a, scm.getOwner(workspace, build, "a/src/Main.java"));
+        assertSame(b, scm.getOwner(workspace, build, workspace.child("b").child("README").getRemote()));
+        assertSame(b, scm.getOwner(workspace, build, "b"));
+        assertNull(scm.getOwner(workspace, build, "c/README"));
+    }
+
+    @Test
+    public void changesArePaged() throws Exception {
+        int entries = MultiSCMChangeLogSet.PAGE_SIZE * 2 + 7;
+        FreeStyleProject project = jenkins.createFreeStyleProject();
+        project.setScm(new MultiSCM(Arrays.<SCM>asList(new StubSCM("a", entries))));
+        FreeStyleBuild build = jenkins.buildAndAssertSuccess(project);
+
+        MultiSCMChangeLogSet changes = (MultiSCMChangeLogSet) build.getChangeSet();
+        MultiSCMChangeLogSet.ChangeLogSetWrapper wrapper = changes.getChangeLogSetWrappers().iterator().next();
+        assertEquals(3, wrapper.getPageCount());
+        assertEquals(MultiSCMChangeLogSet.PAGE_SIZE, wrapper.getPage(0).getSize());
+        assertEquals(7, wrapper.getPage(2).getSize());
+        assertEquals("a commit " + MultiSCMChangeLogSet.PAGE_SIZE, wrapper.getPage(1).getLogs().get(0).getMsg());
+        assertEquals(0, wrapper.getPage(3).getSize());
+
+        // pages past the end show the last one
+        String html = jenkins.createWebClient().goTo(build.getUrl() + "changes?section=0&page=99")
+                .getWebResponse().getContentAsString();
+        assertTrue(html.contains("Changes " + (2 * MultiSCMChangeLogSet.PAGE_SIZE + 1) + " to " + entries + " of " + entries));
+        assertTrue(html.contains("a commit " + (entries - 1)));
+    }
+
+    @Test
+    public void identicalSCMsAreCheckedOutOnce() throws Exception {
+        FreeStyleProject project = jenkins.createFreeStyleProject();
+        project.setScm(new MultiSCM(Arrays.<SCM>asList(
+                new StubSCM("a", 3), new StubSCM("b", 1), new StubSCM("a", 3), new StubSCM("b", 2))));
+        FreeStyleBuild build = jenkins.buildAndAssertSuccess(project);
+
+        jenkins.assertLogContains("SCM 3 is configured exactly like SCM 1", build);
+        jenkins.assertLogContains("SCMs 2 and 4 have the same key", build);
+        List<MultiSCMTimingAction.ChildTiming> timings = build.getAction(MultiSCMTimingAction.class).getChildren();
+        assertEquals(4, timings.size());
+        assertEquals(-1, timings.get(2).getCheckoutMillis());
+        assertEquals(-1, timings.get(2).getChangelogBytes());
+
+        MultiSCMChangeLogSet changes = (MultiSCMChangeLogSet) build.getChangeSet();
+        int entries = 0;
+        for (MultiSCMChangeLogSet.ChangeLogSetWrapper wrapper : changes.getChangeLogSetWrappers()) {
+            entries += wrapper.getSize();
+        }
+        // once for a, and both b's since they are configured differently
+        assertEquals(3 + 1 + 2, entries);
+        assertEquals(PollingResult.Change.NONE, project.poll(TaskListener.NULL).change);
+    }
+
+    @Test
+    public void childAnsweringWhileAnotherTimesOutIsNotLost() throws Exception {
+        StubSCM slow = new StubSCM("slow", 0);
+        slow.setRevision("1");
+        StubSCM fast = new StubSCM("fast", 0);
+        fast.setRevision("1");
+        MultiSCM multiSCM = new MultiSCM(Arrays.<SCM>asList(slow, fast));
+        multiSCM.setParallelPolling(true);
+        multiSCM.setPollingTimeout(1);
+        FreeStyleProject project = jenkins.createFreeStyleProject();
+        project.setScm(multiSCM);
+        jenkins.buildAndAssertSuccess(project);
+
+        // both start together; the fast one is done long before the slow one's deadline
+        slow.setPollDelayMillis(10000);
+        fast.setRevision("2");
+        PollingResult result = project.poll(TaskListener.NULL);
+        assertEquals(PollingResult.Change.SIGNIFICANT, result.change);
+        MultiSCMRevisionState current = (MultiSCMRevisionState) result.remote;
+        assertEquals("2", ((StubSCM.StubRevisionState) current.get(fast, null, null)).getRevision());
+        assertEquals("1", ((StubSCM.StubRevisionState) current.get(slow, null, null)).getRevision());
+    }
+
+    @Test
+    public void parallelCheckoutKeepsEachChildsRevisionState() throws Exception {
+        StubSCM a = new StubSCM("a", 0);
+        a.setCheckoutDelayMillis(500);
+        StubSCM b = new StubSCM("b", 0);
+        b.setCheckoutDelayMillis(500);
+        MultiSCM multiSCM = new MultiSCM(Arrays.<SCM>asList(a, b));
+        multiSCM.setParallelCheckout(true);
+        FreeStyleProject project = jenkins.createFreeStyleProject();
+        project.setScm(multiSCM);
+        // a build in which the SCM type adds no states must not change how later ones are checked out
+        jenkins.buildAndAssertSuccess(project);
+
+        a.setRevision("a1");
+        b.setRevision("b1");
+        FreeStyleBuild build = jenkins.buildAndAssertSuccess(project);
+        MultiSCMRevisionState states = build.getAction(MultiSCMRevisionState.class);
+        assertEquals("a1", ((StubSCM.StubRevisionState) states.get(a, null, null)).getRevision());
+        assertEquals("b1", ((StubSCM.StubRevisionState) states.get(b, null, null)).getRevision());
+        assertEquals(PollingResult.Change.NONE, project.poll(TaskListener.NULL).change);
+    }
+
+    @Test
+    public void pollTimingIsOnlyRecordedForTheBuildItLedTo() throws Exception {
+        FreeStyleProject project = jenkins.createFreeStyleProject();
+        project.setScm(new MultiSCM(Arrays.<SCM>asList(new StubSCM("a", 2))));
+        FreeStyleBuild first = jenkins.buildAndAssertSuccess(project);
+        project.poll(TaskListener.NULL);
+        FreeStyleBuild polled = jenkins.buildAndAssertSuccess(project);
+        FreeStyleBuild unpolled = jenkins.buildAndAssertSuccess(project);
+
+        MultiSCMTimingAction.ChildTiming timing = first.getAction(MultiSCMTimingAction.class).getChildren().get(0);
+        assertEquals("stub a", timing.getScmKey());
+        assertEquals(-1, timing.getPollMillis());
+        assertTrue(timing.getCheckoutMillis() >= 0);
+        assertTrue(timing.getChangelogBytes() > 0);
+
+        assertTrue(polled.getAction(MultiSCMTimingAction.class).getChildren().get(0).getPollMillis() >= 0);
+        // the poll before the previous build says nothing about this one
+        assertEquals(-1, unpolled.getAction(MultiSCMTimingAction.class).getChildren().get(0).getPollMillis());
+    }
+
+    private void assertFastTriggerLeavesSlowChildAlone(boolean parallel) throws Exception {
+        StubSCM changed = new StubSCM("changed", 0);
+        changed.setRevision("1");
+        StubSCM slow = new StubSCM("slow", 0);
+        slow.setRevision("1");
+        MultiSCM multiSCM = new MultiSCM(Arrays.<SCM>asList(changed, slow));
+        multiSCM.setFastTrigger(true);
+        multiSCM.setParallelPolling(parallel);
+        FreeStyleProject project = jenkins.createFreeStyleProject();
+        project.setScm(multiSCM);
+        jenkins.buildAndAssertSuccess(project);
+
+        changed.setRevision("2");
+        slow.setRevision("2");
+        slow.setPollDelayMillis(10000);
+        long start = System.currentTimeMillis();
+        PollingResult result = project.poll(TaskListener.NULL);
+        assertTrue(System.currentTimeMillis() - start < 5000);
+        assertEquals(PollingResult.Change.SIGNIFICANT, result.change);
+        MultiSCMRevisionState current = (MultiSCMRevisionState) result.remote;
+        assertEquals("2", ((StubSCM.StubRevisionState) current.get(changed, null, null)).getRevision());
+        // its change is still to be found once the build is done
+        assertEquals("1", ((StubSCM.StubRevisionState) current.get(slow, null, null)).getRevision());
+    }
+
+    @Test
+    public void fastTriggerSkipsTheRemainingChildren() throws Exception {
+        assertFastTriggerLeavesSlowChildAlone(false);
+    }
+
+    @Test
+    public void fastTriggerCancelsTheSlowerChildren() throws Exception {
+        assertFastTriggerLeavesSlowChildAlone(true);
+    }
+
+    private FreeStyleProject hybridProject(StubSCM remote, StubSCM local) throws Exception {
+        remote.setRevision("1");
+        local.setRevision("1");
+        local.setRequiresWorkspace(true);
+        MultiSCM multiSCM = new MultiSCM(Arrays.<SCM>asList(remote, local));
+        multiSCM.setHybridPolling(true);
+        FreeStyleProject project = jenkins.createFreeStyleProject();
+        project.setScm(multiSCM);
+        assertFalse(multiSCM.requiresWorkspaceForPolling());
+        jenkins.buildAndAssertSuccess(project);
+        return project;
+    }
+
+    @Test
+    public void hybridPollingPollsInTheWorkspaceOfTheLastBuild() throws Exception {
+        StubSCM remote = new StubSCM("remote", 0);
+        StubSCM local = new StubSCM("local", 0);
+        FreeStyleProject project = hybridProject(remote, local);
+
+        local.setRevision("2");
+        PollingResult result = project.poll(TaskListener.NULL);
+        assertEquals(PollingResult.Change.SIGNIFICANT, result.change);
+        assertEquals(1, local.getPolls());
+        assertEquals(1, remote.getPolls());
+        MultiSCMRevisionState current = (MultiSCMRevisionState) result.remote;
+        assertEquals("2", ((StubSCM.StubRevisionState) current.get(local, null, null)).getRevision());
+    }
+
+    @Test
+    public void hybridPollingWithoutWorkspaceOnlyPollsWhatNeedsNone() throws Exception {
+        StubSCM remote = new StubSCM("remote", 0);
+        StubSCM local = new StubSCM("local", 0);
+        FreeStyleProject project = hybridProject(remote, local);
+        project.getSomeBuildWithWorkspace().getWorkspace().deleteRecursive();
+
+        // not seen until there is a workspace to poll it in, rather than building to get one
+        local.setRevision("2");
+        PollingResult result = project.poll(TaskListener.NULL);
+        assertEquals(PollingResult.Change.NONE, result.change);
+        assertEquals(0, local.getPolls());
+        assertEquals(1, remote.getPolls());
+        MultiSCMRevisionState current = (MultiSCMRevisionState) result.remote;
+        assertEquals("1", ((StubSCM.StubRevisionState) current.get(local, null, null)).getRevision());
+        assertEquals("1", ((StubSCM.StubRevisionState) current.get(remote, null, null)).getRevision());
+    }
+
+    @Test
+    public void childrenOfOnePluginAreCheckedOutSideBySide() throws Exception {
+        StubSCM a = new StubSCM("a", 0);
+        a.setRevision("a1");
+        a.setCheckoutDelayMillis(1000);
+        StubSCM b = new StubSCM("b", 0);
+        b.setRevision("b1");
+        b.setCheckoutDelayMillis(1000);
+        MultiSCM multiSCM = new MultiSCM(Arrays.<SCM>asList(a, b));
+        multiSCM.setParallelCheckout(true);
+        FreeStyleProject project = jenkins.createFreeStyleProject();
+        project.setScm(multiSCM);
+        StubSCM.resetMaxRunningCheckouts();
+        FreeStyleBuild build = jenkins.buildAndAssertSuccess(project);
+
+        assertEquals(2, StubSCM.resetMaxRunningCheckouts());
+        MultiSCMRevisionState states = build.getAction(MultiSCMRevisionState.class);
+        assertEquals("a1", ((StubSCM.StubRevisionState) states.get(a, null, null)).getRevision());
+        assertEquals("b1", ((StubSCM.StubRevisionState) states.get(b, null, null)).getRevision());
+        assertEquals(PollingResult.Change.NONE, project.poll(TaskListener.NULL).change);
+    }
+
+    @Test
+    public void hundredsOfSCMs() throws Exception {
+        int count = 500;
+        List<SCM> children = new ArrayList<SCM>();
+        int entries = 0;
+        for (int i = 0; i < count; i++) {
+            children.add(new StubSCM("repo" + i, i % 3));
+            entries += i % 3;
+        }
+        MultiSCM multiSCM = new MultiSCM(children);
+        multiSCM.setParallelPolling(true);
+        multiSCM.setParallelCheckout(true);
+        FreeStyleProject project = jenkins.createFreeStyleProject();
+        project.setScm(multiSCM);
+        FreeStyleBuild build = jenkins.buildAndAssertSuccess(project);
+        MultiSCM scm = (MultiSCM) project.getScm();
+
+        assertTrue(scm.supportsPolling());
+        assertFalse(scm.requiresWorkspaceForPolling());
+        assertEquals(PollingResult.Change.NONE, project.poll(TaskListener.NULL).change);
+
+        FilePath workspace = build.getWorkspace();
+        assertEquals(count, scm.getModuleRoots(workspace, build).length);
+        assertSame(children.get(count - 1), scm.getOwner(workspace, build, "repo" + (count - 1) + "/pom.xml"));
+
+        EnvVars env = build.getEnvironment(TaskListener.NULL);
+        assertEquals("repo0", env.get("STUB_NAME"));
+        assertEquals("repo" + (count - 1), env.get("STUB_NAME_" + (count - 1)));
+
+        MultiSCMTimingAction timings = build.getAction(MultiSCMTimingAction.class);
+        assertEquals(count, timings.getChildren().size());
+
+        MultiSCMChangeLogSet changes = (MultiSCMChangeLogSet) build.getChangeSet();
+        int parsed = 0;
+        for (MultiSCMChangeLogSet.ChangeLogSetWrapper wrapper : changes.getChangeLogSetWrappers()) {
+            parsed += wrapper.getSize();
+        }
+        assertEquals(entries, parsed);
+
+        jenkins.buildAndAssertSuccess(project);
+    }
+}
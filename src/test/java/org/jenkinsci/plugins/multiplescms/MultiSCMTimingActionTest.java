@@ -0,0 +1,40 @@
+package org.jenkinsci.plugins.multiplescms;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class MultiSCMTimingActionTest {
+
+    private static MultiSCMTimingAction.ChildTiming timing(String key, long checkoutMillis) {
+        return new MultiSCMTimingAction.ChildTiming(key, "Stub", -1, checkoutMillis, -1);
+    }
+
+    private static List<String> keysAndMillis(MultiSCMTimingAction action) {
+        List<String> result = new ArrayList<String>();
+        for (MultiSCMTimingAction.ChildTiming child : action.getChildren()) {
+            result.add(child.getScmKey() + "=" + child.getCheckoutMillis());
+        }
+        return result;
+    }
+
+    @Test
+    public void laterCheckoutsOfTheSameBuildAreAdded() {
+        MultiSCMTimingAction first = MultiSCMTimingAction.merge(null, Arrays.asList(timing("a", 1), timing("b", 2)));
+        MultiSCMTimingAction second = MultiSCMTimingAction.merge(first, Arrays.asList(timing("c", 3)));
+
+        assertEquals(Arrays.asList("a=1", "b=2", "c=3"), keysAndMillis(second));
+    }
+
+    @Test
+    public void retriedCheckoutReplacesItsChildren() {
+        MultiSCMTimingAction failed = MultiSCMTimingAction.merge(null, Arrays.asList(timing("a", 1), timing("b", 2)));
+        MultiSCMTimingAction retried = MultiSCMTimingAction.merge(failed, Arrays.asList(timing("a", 10), timing("b", 20)));
+
+        assertEquals(Arrays.asList("a=10", "b=20"), keysAndMillis(retried));
+    }
+}
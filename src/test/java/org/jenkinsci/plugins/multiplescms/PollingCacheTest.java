@@ -0,0 +1,166 @@
+package org.jenkinsci.plugins.multiplescms;
+
+import hudson.scm.PollingResult;
+import hudson.scm.SCMRevisionState;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PollingCacheTest {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final AtomicInteger polls = new AtomicInteger();
+
+    @After
+    public void shutDown() {
+        executor.shutdownNow();
+    }
+
+    private static SCMRevisionState revision(String revision) {
+        return new StubSCM.StubRevisionState("a", revision);
+    }
+
+    private Callable<PollingResult> counting(final PollingResult result) {
+        return new Callable<PollingResult>() {
+            public PollingResult call() {
+                polls.incrementAndGet();
+                return result;
+            }
+        };
+    }
+
+    @Test
+    public void sameBaselineSharesThePoll() throws Exception {
+        PollingCache cache = new PollingCache(60000, 10);
+        StubSCM scm = new StubSCM("a", 0);
+
+        PollingCache.Result first = cache.poll(scm, revision("1"), counting(PollingResult.SIGNIFICANT));
+        PollingCache.Result second = cache.poll(new StubSCM("a", 0), revision("1"), counting(PollingResult.NO_CHANGES));
+
+        assertFalse(first.cached);
+        assertTrue(second.cached);
+        assertSame(PollingResult.SIGNIFICANT, second.result);
+        assertEquals(1, polls.get());
+    }
+
+    @Test
+    public void otherBaselineOrConfigurationIsPolledOnItsOwn() throws Exception {
+        PollingCache cache = new PollingCache(60000, 10);
+
+        cache.poll(new StubSCM("a", 0), revision("1"), counting(PollingResult.NO_CHANGES));
+        assertFalse(cache.poll(new StubSCM("a", 0), revision("2"), counting(PollingResult.NO_CHANGES)).cached);
+        assertFalse(cache.poll(new StubSCM("a", 1), revision("1"), counting(PollingResult.NO_CHANGES)).cached);
+        // without a baseline there is nothing to compare against, so nothing to share
+        assertFalse(cache.poll(new StubSCM("a", 0), SCMRevisionState.NONE, counting(PollingResult.NO_CHANGES)).cached);
+        assertFalse(cache.poll(new StubSCM("a", 0), SCMRevisionState.NONE, counting(PollingResult.NO_CHANGES)).cached);
+        assertEquals(5, polls.get());
+    }
+
+    @Test
+    public void expiredResultIsPolledAgain() throws Exception {
+        PollingCache cache = new PollingCache(50, 10);
+        StubSCM scm = new StubSCM("a", 0);
+
+        cache.poll(scm, revision("1"), counting(PollingResult.NO_CHANGES));
+        Thread.sleep(100);
+        assertFalse(cache.poll(scm, revision("1"), counting(PollingResult.NO_CHANGES)).cached);
+        assertEquals(2, polls.get());
+    }
+
+    @Test
+    public void leastRecentlyUsedIsEvicted() throws Exception {
+        PollingCache cache = new PollingCache(60000, 2);
+        StubSCM scm = new StubSCM("a", 0);
+
+        cache.poll(scm, revision("1"), counting(PollingResult.NO_CHANGES));
+        cache.poll(scm, revision("2"), counting(PollingResult.NO_CHANGES));
+        assertTrue(cache.poll(scm, revision("1"), counting(PollingResult.NO_CHANGES)).cached);
+        cache.poll(scm, revision("3"), counting(PollingResult.NO_CHANGES));
+
+        assertEquals(2, cache.size());
+        assertTrue(cache.poll(scm, revision("1"), counting(PollingResult.NO_CHANGES)).cached);
+        assertFalse(cache.poll(scm, revision("2"), counting(PollingResult.NO_CHANGES)).cached);
+    }
+
+    @Test
+    public void interruptedPollOfAnotherJobIsNotPassedOn() throws Exception {
+        final PollingCache cache = new PollingCache(60000, 10);
+        final StubSCM scm = new StubSCM("a", 0);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        Future<PollingCache.Result> owner = executor.submit(new Callable<PollingCache.Result>() {
+            public PollingCache.Result call() throws Exception {
+                return cache.poll(scm, revision("1"), new Callable<PollingResult>() {
+                    public PollingResult call() throws Exception {
+                        started.countDown();
+                        release.await();
+                        throw new InterruptedException();
+                    }
+                });
+            }
+        });
+        started.await();
+        Future<PollingCache.Result> waiter = executor.submit(new Callable<PollingCache.Result>() {
+            public PollingCache.Result call() throws Exception {
+                return cache.poll(scm, revision("1"), counting(PollingResult.SIGNIFICANT));
+            }
+        });
+        Thread.sleep(200);
+        release.countDown();
+
+        try {
+            owner.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof InterruptedException);
+        }
+        PollingCache.Result result = waiter.get(10, TimeUnit.SECONDS);
+        assertFalse(result.cached);
+        assertSame(PollingResult.SIGNIFICANT, result.result);
+        assertEquals(1, polls.get());
+    }
+
+    @Test
+    public void hungPollOfAnotherJobIsOnlyWaitedForUntilItWouldExpire() throws Exception {
+        final PollingCache cache = new PollingCache(300, 10);
+        final StubSCM scm = new StubSCM("a", 0);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        executor.submit(new Callable<PollingCache.Result>() {
+            public PollingCache.Result call() throws Exception {
+                return cache.poll(scm, revision("1"), new Callable<PollingResult>() {
+                    public PollingResult call() throws Exception {
+                        started.countDown();
+                        release.await();
+                        return PollingResult.NO_CHANGES;
+                    }
+                });
+            }
+        });
+        started.await();
+        try {
+            PollingCache.Result result = cache.poll(scm, revision("1"), counting(PollingResult.SIGNIFICANT));
+            assertFalse(result.cached);
+            assertSame(PollingResult.SIGNIFICANT, result.result);
+        } finally {
+            release.countDown();
+        }
+    }
+}
@@ -0,0 +1,323 @@
+package org.jenkinsci.plugins.multiplescms;
+
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.User;
+import hudson.scm.ChangeLogParser;
+import hudson.scm.ChangeLogSet;
+import hudson.scm.PollingResult;
+import hudson.scm.RepositoryBrowser;
+import hudson.scm.SCMDescriptor;
+import hudson.scm.SCMRevisionState;
+import hudson.scm.SCM;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.kohsuke.stapler.DataBoundConstructor;
+
+/**
+ * SCM that checks out nothing but a directory named after it, holding a
+ * {@code REVISION} file, and writes a changelog of {@code entries} lines,
+ * one per commit.
+ *
+ * Once given a {@link #setRevision revision}, checkout records it as a
+ * {@link StubRevisionState} and polling reports a significant change
+ * whenever it differs from the baseline.
+ */
+public class StubSCM extends SCM {
+    private final String name;
+    private final int entries;
+    private String revision;
+    private long pollDelayMillis;
+    private long checkoutDelayMillis;
+    private boolean brokenPolling;
+    private boolean pollingUnsupported;
+    private boolean requiresWorkspace;
+    private transient volatile int polls;
+    private transient volatile int checkouts;
+
+    private static int runningCheckouts;
+    private static int maxRunningCheckouts;
+
+    @DataBoundConstructor
+    public StubSCM(String name, int entries) {
+        this.name = name;
+        this.entries = entries;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setRevision(String revision) {
+        this.revision = revision;
+    }
+
+    /**
+     * Makes every poll take this long.
+     */
+    public void setPollDelayMillis(long pollDelayMillis) {
+        this.pollDelayMillis = pollDelayMillis;
+    }
+
+    /**
+     * Makes polls fail.
+     */
+    public void setBrokenPolling(boolean brokenPolling) {
+        this.brokenPolling = brokenPolling;
+    }
+
+    public void setSupportsPolling(boolean supportsPolling) {
+        this.pollingUnsupported = !supportsPolling;
+    }
+
+    public void setRequiresWorkspace(boolean requiresWorkspace) {
+        this.requiresWorkspace = requiresWorkspace;
+    }
+
+    /**
+     * @return how often this instance was asked to poll, failed polls included
+     */
+    public int getPolls() {
+        return polls;
+    }
+
+    /**
+     * @return how often this instance checked out
+     */
+    public int getCheckouts() {
+        return checkouts;
+    }
+
+    /**
+     * @return the most checkouts of any stubs that were running at the same
+     *         time since the last call
+     */
+    public static synchronized int resetMaxRunningCheckouts() {
+        int max = maxRunningCheckouts;
+        maxRunningCheckouts = 0;
+        return max;
+    }
+
+    private static synchronized void checkoutStarted() {
+        runningCheckouts++;
+        maxRunningCheckouts = Math.max(maxRunningCheckouts, runningCheckouts);
+    }
+
+    private static synchronized void checkoutDone() {
+        runningCheckouts--;
+    }
+
+    /**
+     * Makes every checkout take this long after recording its revision.
+     */
+    public void setCheckoutDelayMillis(long checkoutDelayMillis) {
+        this.checkoutDelayMillis = checkoutDelayMillis;
+    }
+
+    @Override
+    public String getKey() {
+        return "stub " + name;
+    }
+
+    /**
+     * @return the commit messages this SCM's changelog contains
+     */
+    public List<String> messages() {
+        List<String> messages = new ArrayList<String>(entries);
+        for (int i = 0; i < entries; i++) {
+            messages.add(name + " commit " + i);
+        }
+        return messages;
+    }
+
+    @Override
+    public void checkout(Run<?, ?> build, Launcher launcher, FilePath workspace, TaskListener listener,
+            File changelogFile, SCMRevisionState baseline) throws IOException, InterruptedException {
+        checkouts++;
+        checkoutStarted();
+        try {
+            doCheckout(build, workspace, changelogFile);
+        } finally {
+            checkoutDone();
+        }
+    }
+
+    private void doCheckout(Run<?, ?> build, FilePath workspace, File changelogFile)
+            throws IOException, InterruptedException {
+        workspace.child(name).mkdirs();
+        workspace.child(name).child("REVISION").write(revision != null ? revision : "", "UTF-8");
+        if (revision != null) {
+            build.addAction(new StubRevisionState(name, revision));
+        }
+        if (checkoutDelayMillis > 0) {
+            Thread.sleep(checkoutDelayMillis);
+        }
+        if (changelogFile != null) {
+            Files.write(changelogFile.toPath(), messages(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Override
+    public void buildEnvVars(AbstractBuild<?, ?> build, Map<String, String> env) {
+        env.put("STUB_NAME", name);
+    }
+
+    @Override
+    public FilePath[] getModuleRoots(FilePath workspace, AbstractBuild build) {
+        return new FilePath[] {workspace.child(name)};
+    }
+
+    /**
+     * @return the latest revision this SCM recorded on the build, or null
+     */
+    @Override
+    public SCMRevisionState calcRevisionsFromBuild(Run<?, ?> build, FilePath workspace, Launcher launcher,
+            TaskListener listener) throws IOException, InterruptedException {
+        StubRevisionState latest = null;
+        for (StubRevisionState state : build.getActions(StubRevisionState.class)) {
+            if (state.getName().equals(name)) {
+                latest = state;
+            }
+        }
+        return latest;
+    }
+
+    @Override
+    public PollingResult compareRemoteRevisionWith(Job<?, ?> project, Launcher launcher, FilePath workspace,
+            TaskListener listener, SCMRevisionState baseline) throws IOException, InterruptedException {
+        polls++;
+        if (brokenPolling) {
+            throw new IOException("polling " + name + " is broken");
+        }
+        if (pollDelayMillis > 0) {
+            Thread.sleep(pollDelayMillis);
+        }
+        if (revision == null) {
+            return PollingResult.NO_CHANGES;
+        }
+        boolean same = baseline instanceof StubRevisionState
+                && revision.equals(((StubRevisionState) baseline).getRevision());
+        return new PollingResult(baseline, new StubRevisionState(name, revision),
+                same ? PollingResult.Change.NONE : PollingResult.Change.SIGNIFICANT);
+    }
+
+    @Override
+    public boolean supportsPolling() {
+        return !pollingUnsupported;
+    }
+
+    @Override
+    public boolean requiresWorkspaceForPolling() {
+        return requiresWorkspace;
+    }
+
+    @Override
+    public ChangeLogParser createChangeLogParser() {
+        return new StubChangeLogParser();
+    }
+
+    @Extension
+    public static final class DescriptorImpl extends SCMDescriptor<StubSCM> {
+        public DescriptorImpl() {
+            super(StubSCM.class, null);
+        }
+
+        @Override
+        public String getDisplayName() {
+            return "Stub";
+        }
+    }
+
+    public static final class StubRevisionState extends SCMRevisionState {
+        private final String name;
+        private final String revision;
+
+        StubRevisionState(String name, String revision) {
+            this.name = name;
+            this.revision = revision;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getRevision() {
+            return revision;
+        }
+    }
+
+    public static final class StubChangeLogParser extends ChangeLogParser {
+        @Override
+        public ChangeLogSet<? extends ChangeLogSet.Entry> parse(Run build, RepositoryBrowser<?> browser,
+                File changelogFile) throws IOException {
+            return new StubChangeLogSet(build, browser,
+                    Files.readAllLines(changelogFile.toPath(), StandardCharsets.UTF_8));
+        }
+    }
+
+    public static final class StubChangeLogSet extends ChangeLogSet<StubEntry> {
+        private final List<StubEntry> entries = new ArrayList<StubEntry>();
+
+        StubChangeLogSet(Run<?, ?> build, RepositoryBrowser<?> browser, List<String> messages) {
+            super(build, browser);
+            for (String message : messages) {
+                if (!message.isEmpty()) {
+                    entries.add(new StubEntry(this, message));
+                }
+            }
+        }
+
+        @Override
+        public boolean isEmptySet() {
+            return entries.isEmpty();
+        }
+
+        public Iterator<StubEntry> iterator() {
+            return entries.iterator();
+        }
+
+        @Override
+        public String getKind() {
+            return "stub";
+        }
+    }
+
+    public static final class StubEntry extends ChangeLogSet.Entry {
+        private final String msg;
+
+        StubEntry(StubChangeLogSet parent, String msg) {
+            this.msg = msg;
+            setParent(parent);
+        }
+
+        @Override
+        public String getMsg() {
+            return msg;
+        }
+
+        @Override
+        public User getAuthor() {
+            return User.getUnknown();
+        }
+
+        @Override
+        public Collection<String> getAffectedPaths() {
+            return Collections.emptyList();
+        }
+    }
+}